@@ -0,0 +1,63 @@
+package com.daebecodin.springaimcpragstudybudydemo.benchmark;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Offline EmbeddingModel for benchmarks: the same text always gets the same unit vector,
+ * seeded from the text's hash, so runs are repeatable and make no network calls
+ */
+public class DeterministicEmbeddingModel implements EmbeddingModel {
+
+    private final int dimensions;
+
+    public DeterministicEmbeddingModel(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<Embedding> embeddings = new ArrayList<>();
+        List<String> texts = request.getInstructions();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(vectorFor(texts.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return vectorFor(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @param text any text
+     * @return a unit vector that depends only on the text
+     */
+    public float[] vectorFor(String text) {
+        SplittableRandom random = new SplittableRandom(text == null ? 0 : text.hashCode());
+        float[] vector = new float[dimensions];
+        double norm = 0;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] /= (float) norm;
+        }
+        return vector;
+    }
+}
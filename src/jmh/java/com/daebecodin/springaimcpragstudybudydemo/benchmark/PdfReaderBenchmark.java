@@ -0,0 +1,72 @@
+package com.daebecodin.springaimcpragstudybudydemo.benchmark;
+
+import com.daebecodin.springaimcpragstudybudydemo.document.DocumentParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.ai.reader.pdf.ParagraphPdfDocumentReader;
+import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the bundled PDFs: Spring AI's page and paragraph readers against DocumentParser's single pass.
+ * paragraphThenPage is what ingestion used to do: try the paragraph reader and re-read page by page
+ * when the PDF has no outline
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PdfReaderBenchmark {
+
+    @Param({"docs/stack-implementations.pdf", "docs/mapping-request.pdf"})
+    private String pdf;
+
+    private Resource resource;
+    private PdfDocumentReaderConfig config;
+    private DocumentParser documentParser;
+
+    @Setup
+    public void setUp() {
+        resource = new ClassPathResource(pdf);
+        config = PdfDocumentReaderConfig.builder()
+                .withPageTopMargin(0)
+                .withPageExtractedTextFormatter(ExtractedTextFormatter.builder()
+                        .withNumberOfTopTextLinesToDelete(0)
+                        .build())
+                .withPagesPerDocument(1)
+                .build();
+        documentParser = new DocumentParser(new ObjectMapper());
+    }
+
+    @Benchmark
+    public List<Document> pageReader() {
+        return new PagePdfDocumentReader(resource, config).read();
+    }
+
+    @Benchmark
+    public List<Document> paragraphThenPage() {
+        try {
+            return new ParagraphPdfDocumentReader(resource, config).read();
+        } catch (IllegalArgumentException e) {
+            return new PagePdfDocumentReader(resource, config).read();
+        }
+    }
+
+    @Benchmark
+    public List<Document> singlePassParser() {
+        return documentParser.parsePdf(resource);
+    }
+}
@@ -0,0 +1,53 @@
+package com.daebecodin.springaimcpragstudybudydemo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TokenTextSplitter throughput over the pages of a bundled PDF.
+ * The splitter is built exactly like TextSplitterConfig builds it, so the parameters map onto
+ * spring.ai.text-splitter.chunk-size and spring.ai.text-splitter.overlap
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TextSplitterBenchmark {
+
+    @Param({"200", "500", "800"})
+    private int chunkSize;
+
+    @Param({"0", "100", "350"})
+    private int overlap;
+
+    private List<Document> pages;
+    private TokenTextSplitter splitter;
+
+    @Setup
+    public void setUp() {
+        pages = new PagePdfDocumentReader(new ClassPathResource("docs/stack-implementations.pdf")).get();
+        splitter = new TokenTextSplitter(chunkSize, overlap, 5, 10000, true);
+    }
+
+    /**
+     * @return the chunks, so the work is not optimized away
+     */
+    @Benchmark
+    public List<Document> splitDocument() {
+        // the splitter keeps nothing between calls, but documents are copied so ids and metadata start fresh
+        return splitter.apply(pages.stream().map(page -> new Document(page.getText(), new HashMap<>(page.getMetadata()))).toList());
+    }
+}
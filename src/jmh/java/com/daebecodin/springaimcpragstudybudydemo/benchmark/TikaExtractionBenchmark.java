@@ -0,0 +1,85 @@
+package com.daebecodin.springaimcpragstudybudydemo.benchmark;
+
+import org.apache.tika.Tika;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tika extraction the way /upload-for-text used to do it (new Tika, parseToString)
+ * against the way TextExtractionService does it (one shared parser, SAX output streamed to a writer).
+ * The file is held in memory so disk reads are not measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TikaExtractionBenchmark {
+
+    @Param({"docs/stack-implementations.pdf", "docs/mapping-request.pdf"})
+    private String file;
+
+    private byte[] content;
+    private final Parser sharedParser = new AutoDetectParser();
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = new ClassPathResource(file).getInputStream()) {
+            content = in.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public String newTikaParseToString() throws Exception {
+        return new Tika().parseToString(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * @return characters extracted, so the work is not optimized away
+     */
+    @Benchmark
+    public long sharedParserStreamed() throws Exception {
+        CountingWriter writer = new CountingWriter();
+        ParseContext context = new ParseContext();
+        context.set(Parser.class, sharedParser);
+        sharedParser.parse(TikaInputStream.get(new ByteArrayInputStream(content)),
+                new BodyContentHandler(writer), new Metadata(), context);
+        return writer.count;
+    }
+
+    // stands in for the response body; keeps nothing
+    private static final class CountingWriter extends Writer {
+
+        private long count;
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+import com.daebecodin.springaimcpragstudybudydemo.benchmark.DeterministicEmbeddingModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Similarity search over a synthetic corpus: Spring AI's SimpleVectorStore (exact scan over boxed lists)
+ * against the HnswIndex behind HnswVectorStore. Embeddings come from DeterministicEmbeddingModel,
+ * so both stores hold the same vectors and no network is involved.
+ * Lives in the vector package because HnswIndex is package private
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimilaritySearchBenchmark {
+
+    private static final int DIMENSIONS = 1024;
+
+    @Param({"1000", "10000"})
+    private int corpusSize;
+
+    @Param({"5"})
+    private int topK;
+
+    private final DeterministicEmbeddingModel embeddingModel = new DeterministicEmbeddingModel(DIMENSIONS);
+    private SimpleVectorStore simpleVectorStore;
+    private HnswIndex hnswIndex;
+    private List<float[]> queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Document> corpus = new ArrayList<>(corpusSize);
+        for (int i = 0; i < corpusSize; i++) {
+            corpus.add(new Document("synthetic chunk " + i, Map.of("source_filename", "synthetic-" + (i % 50) + ".pdf")));
+        }
+
+        simpleVectorStore = SimpleVectorStore.builder(embeddingModel).build();
+        simpleVectorStore.add(corpus);
+
+        hnswIndex = new HnswIndex(DIMENSIONS, 16, 100, corpusSize);
+        corpus.forEach(document -> hnswIndex.add(document, embeddingModel.vectorFor(document.getText())));
+
+        queries = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            queries.add(embeddingModel.vectorFor("query " + i));
+        }
+    }
+
+    @Benchmark
+    public List<Document> simpleVectorStore() {
+        // SimpleVectorStore embeds the query itself; the stub is deterministic, so this is the same vector
+        return simpleVectorStore.similaritySearch(SearchRequest.builder().query("query " + (next++ & 63)).topK(topK).build());
+    }
+
+    @Benchmark
+    public List<HnswIndex.Hit> hnswIndex() {
+        return hnswIndex.search(queries.get(next++ & 63), topK, 64);
+    }
+}
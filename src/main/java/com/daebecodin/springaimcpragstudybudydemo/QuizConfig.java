@@ -1,69 +1,196 @@
 package com.daebecodin.springaimcpragstudybudydemo;
 
-
-import org.springframework.ai.bedrock.converse.BedrockProxyChatModel;
+import com.daebecodin.springaimcpragstudybudydemo.embedding.CachingEmbeddingModel;
+import com.daebecodin.springaimcpragstudybudydemo.embedding.EmbeddingBatchingStrategy;
+import com.daebecodin.springaimcpragstudybudydemo.embedding.EmbeddingCacheRepository;
+import com.daebecodin.springaimcpragstudybudydemo.memory.WindowedChatMemory;
+import com.daebecodin.springaimcpragstudybudydemo.provider.Bulkhead;
+import com.daebecodin.springaimcpragstudybudydemo.provider.BulkheadAdvisor;
+import com.daebecodin.springaimcpragstudybudydemo.provider.BulkheadEmbeddingModel;
+import com.daebecodin.springaimcpragstudybudydemo.provider.ProviderStatsAdvisor;
+import com.daebecodin.springaimcpragstudybudydemo.provider.ProviderStatsRegistry;
+import com.daebecodin.springaimcpragstudybudydemo.rag.ContextPacker;
+import com.daebecodin.springaimcpragstudybudydemo.rag.ContextPackingAdvisor;
+import com.daebecodin.springaimcpragstudybudydemo.vector.CachingVectorStore;
+import com.daebecodin.springaimcpragstudybudydemo.vector.HnswVectorStore;
+import com.daebecodin.springaimcpragstudybudydemo.vector.QuantizedSearch;
+import com.daebecodin.springaimcpragstudybudydemo.vector.QuantizedVectorStore;
+import com.daebecodin.springaimcpragstudybudydemo.vector.VectorStorageMode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
-import org.springframework.ai.chat.client.advisor.vectorstore.VectorStoreChatMemoryAdvisor;
 import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.Resource;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.time.Duration;
+
 @Configuration
 public class QuizConfig {
 
     /**
      * OpenAI ChatClient bean
+     * Models are injected by bean name rather than class so the loadtest profile can swap in fakes
      * @param openAiChatModel the model provided by OpenAI
-     * @return a created bean of the model
+     * @param observationRegistry records a span and timer per call and per advisor
+     * @param meterRegistry receives the bulkhead metrics
+     * @param providerStats latency and error rate per provider, used by model=auto
+     * @param vectorStore searched for course material on every prompt
+     * @param contextPacker fits what the search returns into rag.context.budget.openai tokens
+     * @return a created bean of the model; calls beyond provider.bulkhead.openai.max-concurrent wait, then fail
      */
     @Bean
     @Qualifier("openai")
-    public ChatClient openAiChatClient(@Qualifier("openAiChatModel") OpenAiChatModel openAiChatModel) {
-        return ChatClient.create(openAiChatModel);
+    public ChatClient openAiChatClient(@Qualifier("openAiChatModel") ChatModel openAiChatModel, ObservationRegistry observationRegistry,
+                                       MeterRegistry meterRegistry, ProviderStatsRegistry providerStats,
+                                       VectorStore vectorStore, ContextPacker contextPacker,
+                                       @Value("${rag.context.budget.openai:2000}") int contextBudget,
+                                       @Value("${provider.bulkhead.openai.max-concurrent:16}") int maxConcurrent,
+                                       @Value("${provider.bulkhead.openai.queue-timeout:2s}") Duration queueTimeout) {
+        return ChatClient.builder(openAiChatModel, observationRegistry, null)
+                .defaultAdvisors(new ContextPackingAdvisor(vectorStore, contextPacker, "openai", contextBudget, meterRegistry),
+                        new ProviderStatsAdvisor(providerStats.get("openai")),
+                        new BulkheadAdvisor(new Bulkhead("openai", maxConcurrent, queueTimeout, meterRegistry)))
+                .build();
     }
 
     /**
      * Bedrock ChatClient bean
      * @param bedrockProxyChatModel amazon nova lite model
-     * @return instantiated bean of the model
+     * @param observationRegistry records a span and timer per call and per advisor
+     * @param meterRegistry receives the bulkhead metrics
+     * @param providerStats latency and error rate per provider, used by model=auto
+     * @param vectorStore searched for course material on every prompt
+     * @param contextPacker fits what the search returns into rag.context.budget.bedrock tokens
+     * @return instantiated bean of the model; calls beyond provider.bulkhead.bedrock.max-concurrent wait, then fail
      */
     @Bean 
     @Qualifier("bedrock")
-    public ChatClient bedrockChatClient(@Qualifier("bedrockProxyChatModel") BedrockProxyChatModel bedrockProxyChatModel) {
-        return ChatClient.create(bedrockProxyChatModel);
+    public ChatClient bedrockChatClient(@Qualifier("bedrockProxyChatModel") ChatModel bedrockProxyChatModel, ObservationRegistry observationRegistry,
+                                        MeterRegistry meterRegistry, ProviderStatsRegistry providerStats,
+                                        VectorStore vectorStore, ContextPacker contextPacker,
+                                        @Value("${rag.context.budget.bedrock:2000}") int contextBudget,
+                                        @Value("${provider.bulkhead.bedrock.max-concurrent:16}") int maxConcurrent,
+                                        @Value("${provider.bulkhead.bedrock.queue-timeout:2s}") Duration queueTimeout) {
+        return ChatClient.builder(bedrockProxyChatModel, observationRegistry, null)
+                .defaultAdvisors(new ContextPackingAdvisor(vectorStore, contextPacker, "bedrock", contextBudget, meterRegistry),
+                        new ProviderStatsAdvisor(providerStats.get("bedrock")),
+                        new BulkheadAdvisor(new Bulkhead("bedrock", maxConcurrent, queueTimeout, meterRegistry)))
+                .build();
     }
 
     /**
-     * Providing a memory for the chat
-     * @param vectorStore This is the class representation of the underlying vector database messages will be stored
-     * @return
+     * Creating a bean for our Embedding Model
+     * @param embeddingModel This is the bean initialization for our PgVectorStore
+     * @param batchingStrategy sizes embedding requests to the provider's text and token limits
+     * @param observationRegistry records a span and timer per query, add and delete
+     * @return the pgvector store; the source of truth for every other store. Defining it here turns off the auto-configured one,
+     * so the spring.ai.vectorstore.pgvector.* settings are applied by hand; with initialize-schema it creates the table on startup
      */
     @Bean
-    QuestionAnswerAdvisor questionAnswerAdvisor(VectorStore vectorStore) {
-        return new QuestionAnswerAdvisor(vectorStore);
+    PgVectorStore pgVectorStore(JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel, EmbeddingBatchingStrategy batchingStrategy,
+                                ObservationRegistry observationRegistry,
+                                @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+                                @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+                                @Value("${spring.ai.vectorstore.pgvector.initialize-schema:false}") boolean initializeSchema,
+                                @Value("${spring.ai.vectorstore.pgvector.index-type:HNSW}") PgVectorStore.PgIndexType indexType,
+                                @Value("${spring.ai.vectorstore.pgvector.distance-type:COSINE_DISTANCE}") PgVectorStore.PgDistanceType distanceType,
+                                @Value("${spring.ai.vectorstore.pgvector.dimensions:1024}") int dimensions,
+                                @Value("${vector.storage.mode:FULL}") VectorStorageMode storageMode) {
+        return PgVectorStore.builder(jdbcTemplate, embeddingModel)
+                .schemaName(schemaName)
+                .vectorTableName(tableName)
+                .initializeSchema(initializeSchema)
+                // a quantized mode replaces the float32 index; initialize-schema would otherwise build it again every start
+                .indexType(storageMode == VectorStorageMode.FULL ? indexType : PgVectorStore.PgIndexType.NONE)
+                .distanceType(distanceType)
+                .dimensions(dimensions)
+                .batchingStrategy(batchingStrategy)
+                .observationRegistry(observationRegistry)
+                .build();
     }
 
     /**
-     * Creating a bean for our Embedding Model
-     * @param embeddingModel This is the bean initialization for our PgVectorStore
+     * Optional in-process HNSW replica of the pgvector table; searches run in memory, writes still go to Postgres
+     * @param pgVectorStore the store it mirrors
+     * @return the replica, warmed once the context is up
+     */
+    @Bean
+    @ConditionalOnProperty(name = "retrieval.replica.enabled", havingValue = "true")
+    HnswVectorStore hnswVectorStore(PgVectorStore pgVectorStore, JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel,
+                                    ObjectMapper objectMapper,
+                                    @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+                                    @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+                                    @Value("${retrieval.replica.m:16}") int m,
+                                    @Value("${retrieval.replica.ef-construction:100}") int efConstruction,
+                                    @Value("${retrieval.replica.ef-search:64}") int efSearch) {
+        return new HnswVectorStore(pgVectorStore, jdbcTemplate, embeddingModel, objectMapper,
+                schemaName + "." + tableName, m, efConstruction, efSearch);
+    }
+
+    /**
+     * The vector store everything searches through
+     * Searches are answered from a short lived result cache when the same query was seen recently;
+     * the retrieval advisors and the debug endpoints all go through it.
+     * Misses go to the in-process replica when it is enabled, otherwise to pgvector,
+     * through the quantized index when vector.storage.mode is HALFVEC or BINARY
+     * @param pgVectorStore the pgvector store
+     * @param replica the in-process replica, if retrieval.replica.enabled is set
+     * @param quantizedSearch oversampled search and exact re-rank over the quantized index
+     * @param meterRegistry times every search, split by cache hit and miss
      * @return
      */
     @Bean
-    VectorStore vectorStore(JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel) {
-        return PgVectorStore.builder(jdbcTemplate, embeddingModel).build();
+    @Primary
+    VectorStore vectorStore(PgVectorStore pgVectorStore, ObjectProvider<HnswVectorStore> replica,
+                            QuantizedSearch quantizedSearch, EmbeddingModel embeddingModel, MeterRegistry meterRegistry,
+                            @Value("${retrieval.cache.ttl:10m}") Duration cacheTtl,
+                            @Value("${retrieval.cache.max-entries:1000}") long cacheMaxEntries) {
+        VectorStore searchStore = pgVectorStore;
+        if (quantizedSearch.getMode() != VectorStorageMode.FULL) {
+            searchStore = new QuantizedVectorStore(pgVectorStore, quantizedSearch, embeddingModel);
+        }
+        HnswVectorStore hnswVectorStore = replica.getIfAvailable();
+        if (hnswVectorStore != null) {
+            searchStore = hnswVectorStore;
+        }
+        return new CachingVectorStore(searchStore, cacheTtl, cacheMaxEntries, meterRegistry);
+    }
+
+    /**
+     * Embedding model used by everything in the app; wraps the Bedrock Cohere model with a two tier cache
+     * so a text is only ever embedded once per model; calls that miss the cache go through the embedding bulkhead
+     * @param cohereEmbeddingModel the auto-configured model that computes embeddings
+     * @param cacheRepository persistent tier of the cache
+     * @param meterRegistry receives embedding timings and cache hit counts
+     * @return the caching embedding model
+     */
+    @Bean
+    @Primary
+    CachingEmbeddingModel cachingEmbeddingModel(@Qualifier("cohereEmbeddingModel") EmbeddingModel cohereEmbeddingModel,
+                                                EmbeddingCacheRepository cacheRepository, MeterRegistry meterRegistry,
+                                                @Value("${embedding.cache.model-id:cohere.embed-multilingual-v3}") String modelId,
+                                                @Value("${embedding.cache.max-memory-entries:20000}") int maxMemoryEntries,
+                                                @Value("${provider.bulkhead.embedding.max-concurrent:16}") int maxConcurrent,
+                                                @Value("${provider.bulkhead.embedding.queue-timeout:2s}") Duration queueTimeout) {
+        EmbeddingModel limited = new BulkheadEmbeddingModel(cohereEmbeddingModel,
+                new Bulkhead("embedding", maxConcurrent, queueTimeout, meterRegistry));
+        return new CachingEmbeddingModel(limited, cacheRepository, modelId, maxMemoryEntries, meterRegistry);
     }
 
     @Bean
@@ -76,9 +203,16 @@ public class QuizConfig {
      */
     @Bean
     @Primary
-    ChatClient chatClient(@Qualifier("bedrockProxyChatModel") BedrockProxyChatModel bedrockProxyChatModel, // Use Bedrock as primary model
-                          VectorStore vectorStore, // vector database representation for the chat
-                          QuestionAnswerAdvisor qaAdvisor // chat memory
+    ChatClient chatClient(@Qualifier("bedrockProxyChatModel") ChatModel bedrockProxyChatModel, // Use Bedrock as primary model
+                          WindowedChatMemory chatMemory, // recent turns of each conversation, kept out of the vector store
+                          VectorStore vectorStore, // searched for course material on every prompt
+                          ContextPacker contextPacker,
+                          @Value("${rag.context.budget.primary:2000}") int contextBudget,
+                          ObservationRegistry observationRegistry, // spans and timers for the call and each advisor
+                          MeterRegistry meterRegistry,
+                          ProviderStatsRegistry providerStats, // same model as the bedrock client, so its calls count towards bedrock
+                          @Value("${provider.bulkhead.primary.max-concurrent:16}") int maxConcurrent,
+                          @Value("${provider.bulkhead.primary.queue-timeout:2s}") Duration queueTimeout
     ) {
 
         // default system prompt; possibly make a resource
@@ -132,9 +266,12 @@ public class QuizConfig {
                 
                 """;
 
-        return ChatClient.builder(bedrockProxyChatModel) // Use specific model instead of generic builder
+        return ChatClient.builder(bedrockProxyChatModel, observationRegistry, null) // Use specific model instead of generic builder
                 .defaultSystem(system) // system prompt
-                .defaultAdvisors(VectorStoreChatMemoryAdvisor.builder(vectorStore).build(), qaAdvisor) // stores our chat into a vector database
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build(), // replays the window of the ChatMemory.CONVERSATION_ID each request passes
+                        new ContextPackingAdvisor(vectorStore, contextPacker, "primary", contextBudget, meterRegistry),
+                        new ProviderStatsAdvisor(providerStats.get("bedrock")),
+                        new BulkheadAdvisor(new Bulkhead("primary", maxConcurrent, queueTimeout, meterRegistry))) // own limit, apart from the bedrock client
                 .build(); // building an immutable object
     }
 }
@@ -2,9 +2,11 @@ package com.daebecodin.springaimcpragstudybudydemo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 //import org.springframework.ai.model.openai.autoconfigure.OpenAiChatAutoConfiguration;
 
 @SpringBootApplication
+@EnableScheduling // quiz bank refill
 public class SpringAiMcpRagStudyBudyDemoApplication {
 
     public static void main(String[] args) {
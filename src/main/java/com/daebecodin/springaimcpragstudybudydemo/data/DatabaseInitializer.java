@@ -4,6 +4,7 @@ import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
@@ -21,54 +22,116 @@ public class DatabaseInitializer {
     
     @PostConstruct
     public void initializeDatabase() {
-        try {
-            // Check if the processed_documents table exists
-            // this query will be passed in for checking
-            String checkTableQuery = """
-                SELECT EXISTS (
-                    SELECT FROM information_schema.tables
-                    WHERE table_schema = 'public'
-                    AND table_name = 'processed_documents'
+        // every step is on its own: one failing statement is logged and the remaining tables are still created
+        step("processed_documents table", this::createProcessedDocuments);
+
+        // renamed copies are found by hash
+        step("processed_documents content_hash index", () ->
+                jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS processed_documents_content_hash_idx ON processed_documents (content_hash)"));
+
+        // the vector table itself, its source_filename index and the old chat turn purge are VectorTableInitializer's job
+
+        // persistent tier of the embedding cache; vectors are keyed by model and normalized text hash
+        step("embedding_cache table", () -> jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS embedding_cache (
+                    model_id VARCHAR(128) NOT NULL,
+                    text_hash VARCHAR(64) NOT NULL,
+                    embedding vector NOT NULL,
+                    created_at TIMESTAMP NOT NULL DEFAULT now(),
+                    PRIMARY KEY (model_id, text_hash)
                 );
-                """;
+                """));
+
+        // conversation memory; kept out of vector_store so chat turns are never embedded or retrieved as course material
+        step("chat_memory table", () -> jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS chat_memory (
+                    conversation_id VARCHAR(255) NOT NULL,
+                    seq BIGINT NOT NULL,
+                    message_type VARCHAR(16) NOT NULL,
+                    content TEXT NOT NULL,
+                    created_at TIMESTAMP NOT NULL DEFAULT now(),
+                    PRIMARY KEY (conversation_id, seq)
+                );
+                """));
+
+        // pre-generated quizzes per document section; section is the page_number of the chunks they were made from
+        step("quiz_bank table", () -> jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS quiz_bank (
+                    id BIGSERIAL PRIMARY KEY,
+                    source_filename VARCHAR(255) NOT NULL,
+                    section VARCHAR(64) NOT NULL,
+                    questions TEXT NOT NULL,
+                    served_count INT NOT NULL DEFAULT 0,
+                    created_at TIMESTAMP NOT NULL DEFAULT now()
+                );
+                """));
+        step("quiz_bank section index", () ->
+                jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS quiz_bank_section_idx ON quiz_bank (source_filename, section, served_count)"));
+    }
+
+    private void createProcessedDocuments() {
+        // Check if the processed_documents table exists
+        // this query will be passed in for checking
+        String checkTableQuery = """
+            SELECT EXISTS (
+                SELECT FROM information_schema.tables
+                WHERE table_schema = 'public'
+                AND table_name = 'processed_documents'
+            );
+            """;
+
+        /** Jdbc queryForObject()
+         * the queryForObject method accepts the query for the object and the return type of statement;
+         * in our case we make a query for the table, pass the query and pass the Boolean class; we want to return a boolean result
+         * we want to compare the query for a table passed in with a possible existing table in the database
+         */
+        Boolean tableExists = jdbcTemplate.queryForObject(checkTableQuery, Boolean.class);
 
-            /** Jdbc queryForObject()
-             * the queryForObject method accepts the query for the object and the return type of statement;
-             * in our case we make a query for the table, pass the query and pass the Boolean class; we want to return a boolean result
-             * we want to compare the query for a table passed in with a possible existing table in the database
-             */
-            Boolean tableExists = jdbcTemplate.queryForObject(checkTableQuery, Boolean.class);
+        // if no table when we create one
+        if (Boolean.FALSE.equals(tableExists)) {
+            logger.info("Creating processed_documents table...");
 
-            // if no table when we create one
-            if (Boolean.FALSE.equals(tableExists)) {
-                logger.info("Creating processed_documents table...");
+            // creating a query
+            String createTableQuery = """
+                CREATE TABLE processed_documents (
+                    id BIGSERIAL PRIMARY KEY,
+                    filename VARCHAR(255) UNIQUE NOT NULL,
+                    file_size BIGINT,
+                    processed_at TIMESTAMP,
+                    chunk_count INTEGER,
+                    content_hash VARCHAR(64),
+                    last_modified BIGINT
+                );
+                """;
 
-                // creating a query
-                String createTableQuery = """
-                    CREATE TABLE processed_documents (
-                        id BIGSERIAL PRIMARY KEY,
-                        filename VARCHAR(255) UNIQUE NOT NULL,
-                        file_size BIGINT,
-                        processed_at TIMESTAMP,
-                        chunk_count INTEGER
-                    );
-                    """;
+            /** Jdbc execute()
+             * the execute method accepts a statement; in our case a query;
+             * that statement is then processed and initialized
+             * in order to access what is created, we must use the method provided by the Statement interface
+             * */
+            jdbcTemplate.execute(createTableQuery);
+            logger.info("Successfully created processed_documents table");
+        } else {
+            logger.info("processed_documents table already exists");
 
-                /** Jdbc execute()
-                 * the execute method accepts a statement; in our case a query;
-                 * that statement is then processed and initialized
-                 * in order to access what is created, we must use the method provided by the Statement interface
-                 * */
-                jdbcTemplate.execute(createTableQuery);
-                logger.info("Successfully created processed_documents table");
-            } else {
-                logger.info("processed_documents table already exists");
-            }
-            
-        } catch (Exception e) {
-            logger.error("Error initializing database: {}", e.getMessage(), e);
+            // tables created before content hashing was added are missing these columns
+            jdbcTemplate.execute("ALTER TABLE processed_documents ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64)");
+            jdbcTemplate.execute("ALTER TABLE processed_documents ADD COLUMN IF NOT EXISTS last_modified BIGINT");
+        }
+    }
+
+    /**
+     * Runs one initialization step, logging a failure instead of letting it stop the steps after it
+     * @param description what the step creates, for the log
+     * @param ddl the statements to run
+     */
+    private void step(String description, Runnable ddl) {
+        try {
+            ddl.run();
+        } catch (DataAccessException e) {
             // Not throwing the exception to allow the application to continue
-            // The JPA auto-creation will handle it as fallback
+            // The JPA auto-creation will handle processed_documents as fallback
+            logger.error("Error initializing {}: {}", description, e.getMessage(), e);
         }
     }
 }
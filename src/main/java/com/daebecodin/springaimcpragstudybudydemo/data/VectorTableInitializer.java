@@ -0,0 +1,69 @@
+package com.daebecodin.springaimcpragstudybudydemo.data;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Schema work on the pgvector table that has to wait for the table to exist.
+ * PgVectorStore creates the table when it initializes; taking it as a dependency means this runs right after,
+ * so a fresh database gets the indexes on its first start. Uses the configured schema and table names
+ */
+@Component
+public class VectorTableInitializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorTableInitializer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.ai.vectorstore.pgvector.schema-name:public}")
+    private String schemaName;
+
+    @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}")
+    private String tableName;
+
+    /**
+     * @param pgVectorStore not used; only here so the table is created before this runs
+     */
+    public VectorTableInitializer(JdbcTemplate jdbcTemplate, PgVectorStore pgVectorStore) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void initialize() {
+        Boolean tableExists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table());
+        if (!Boolean.TRUE.equals(tableExists)) {
+            logger.warn("{} does not exist; set spring.ai.vectorstore.pgvector.initialize-schema=true or create it", table());
+            return;
+        }
+
+        // removing or re-indexing a document looks its chunks up by source_filename; without this it scans the whole table
+        try {
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s_source_filename_idx ON %s ((metadata->>'source_filename'))"
+                    .formatted(tableName, table()));
+        } catch (DataAccessException e) {
+            logger.error("Could not create the source_filename index on {}: {}", table(), e.getMessage(), e);
+        }
+
+        // turns VectorStoreChatMemoryAdvisor used to write into the vector table; they have a conversationId and no source file
+        try {
+            int purged = jdbcTemplate.update(
+                    "DELETE FROM %s WHERE metadata->>'conversationId' IS NOT NULL AND metadata->>'source_filename' IS NULL"
+                            .formatted(table()));
+            if (purged > 0) {
+                logger.info("Removed {} chat turns from {}", purged, table());
+            }
+        } catch (DataAccessException e) {
+            logger.error("Could not remove old chat turns from {}: {}", table(), e.getMessage(), e);
+        }
+    }
+
+    private String table() {
+        return schemaName + "." + tableName;
+    }
+}
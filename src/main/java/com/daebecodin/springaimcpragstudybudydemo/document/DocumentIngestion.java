@@ -1,44 +1,47 @@
 package com.daebecodin.springaimcpragstudybudydemo.document;
 
-import jakarta.annotation.PostConstruct;
-import org.apache.tika.Tika;
-import org.apache.tika.exception.TikaException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.reader.ExtractedTextFormatter;
-import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
-import org.springframework.ai.reader.pdf.ParagraphPdfDocumentReader;
-import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Service
-@Order(2) // Run after DatabaseInitializer
 public class DocumentIngestion {
 
     private static final Logger logger = LoggerFactory.getLogger(DocumentIngestion.class);
+
+    // uploads are tracked and stored under uploads/<jobId>/<name>, apart from the docs directory and from each other
+    static final String UPLOADS_PREFIX = "uploads/";
     
-    private final VectorStore vectorStore;
     private final TikaDocumentReader tikaDocumentReader;
-    private final TokenTextSplitter textSplitter;
     private final ProcessedDocumentRepository processedDocumentRepository;
+    private final DocumentParser documentParser;
+    private final IngestionPipeline ingestionPipeline;
+    private final VectorStoreWriter vectorStoreWriter;
+
+    // size, mtime and hash read while scanning, reused when the tracking record is saved
+    private final Map<Path, Fingerprint> scannedFingerprints = new ConcurrentHashMap<>();
 
     @Value("classpath:/docs/Spring-Framework-Reference-Documentation.pdf")
     private Resource stackImplementations;
@@ -49,28 +52,29 @@ public class DocumentIngestion {
     @Value("${inputFilenamePattern}")
     private String inputFilePattern;
 
-    DocumentIngestion(VectorStore vectorStore, TikaDocumentReader tikaDocumentReader, 
-                     TokenTextSplitter textSplitter, ProcessedDocumentRepository processedDocumentRepository) {
-        this.vectorStore = vectorStore;
+    DocumentIngestion(TikaDocumentReader tikaDocumentReader, ProcessedDocumentRepository processedDocumentRepository,
+                      DocumentParser documentParser, IngestionPipeline ingestionPipeline, VectorStoreWriter vectorStoreWriter) {
         this.tikaDocumentReader = tikaDocumentReader;
-        this.textSplitter = textSplitter;
         this.processedDocumentRepository = processedDocumentRepository;
+        this.documentParser = documentParser;
+        this.ingestionPipeline = ingestionPipeline;
+        this.vectorStoreWriter = vectorStoreWriter;
     }
 
     /**
-     * Initialization method to process documents before startup.
-     * We call getDocumentsToProcess to discover new documents; if none, then we move one
-     * If there are new documents, the document name is extracted, converted to a url and then read by a document reader.
+     * Checks the docs directory for new or changed documents and runs them through the pipeline.
+     * No longer part of startup: DocumentScanService calls it in the background once the application is ready,
+     * and again for /api/documents/rescan. Blocks until every document has left the pipeline
+     * @param scan told which documents were found, then notified as they move through the pipeline
      * @throws IOException Input/Output Problems
      */
-    @PostConstruct
-    @Transactional
-    void init() throws IOException {
+    void scan(DocumentScan scan) throws IOException {
         try {
             logger.info("Starting document ingestion process...");
             
             // Get all documents in the docs directory
             List<Path> documentsToProcess = getDocumentsToProcess();
+            scan.begin(documentsToProcess);
             
             if (documentsToProcess.isEmpty()) {
                 logger.info("No new documents to process");
@@ -79,9 +83,8 @@ public class DocumentIngestion {
             
             logger.info("Found {} new documents to process", documentsToProcess.size());
             
-            for (Path documentPath : documentsToProcess) { // iterate though documents
-                processDocument(documentPath); // process document
-            }
+            // documents flow through the parse/split/embed/store stages concurrently
+            ingestionPipeline.run(documentsToProcess, scannedHashes(documentsToProcess), trackingListener.andThen(scan));
             
             logger.info("Document ingestion process completed");
             
@@ -92,43 +95,145 @@ public class DocumentIngestion {
     }
 
     /**
-     * This method checks the directory for new files by cross-referencing the
-     * current file's names with names in the database.
-     * If it's a new file then we add it to a new List of documents
+     * This method checks the directory for new or changed files by cross-referencing the
+     * files on disk with the tracking records in the database.
+     * All records for the directory are loaded in one query; see selectDocumentsToProcess
      * @return New list of documents to be processed
      * @throws IOException Input/Output Problems
      */
     private List<Path> getDocumentsToProcess() throws IOException {
-        List<Path> newDocuments = new ArrayList<>();
-        
+        List<Path> documents = listDocuments();
+        Set<String> filenames = documents.stream()
+                .map(path -> path.getFileName().toString())
+                .collect(Collectors.toSet());
+        return selectDocumentsToProcess(documents, filenames);
+    }
+
+    /**
+     * Lists every supported file in the docs directory
+     * @return paths of the files found
+     * @throws IOException Input/Output Problems
+     */
+    private List<Path> listDocuments() throws IOException {
         // Get the docs directory path
         Path docsPath = Paths.get(documentDirectory.getURI());
-        
+
         // Find all files matching the pattern
         try (Stream<Path> files = Files.walk(docsPath)) {
-            files.filter(Files::isRegularFile)
-                 .filter(path -> matchesPattern(path.getFileName().toString()))
-                 .forEach(path -> {
-                     String filename = path.getFileName().toString();
-                     
-                     try {
-                         // Check if this document has already been processed
-                         if (!processedDocumentRepository.existsByFilename(filename)) {
-                             newDocuments.add(path);
-                             logger.info("Found new document to process: {}", filename);
-                         } else {
-                             logger.debug("Document {} already processed, skipping", filename);
-                         }
-                     } catch (Exception e) {
-                         // If there's an error checking the database (e.g., table doesn't exist yet),
-                         // assume the document is new and needs processing
-                         logger.warn("Error checking if document {} exists in database, will process: {}", filename, e.getMessage());
-                         newDocuments.add(path);
-                     }
-                 });
+            return files.filter(Files::isRegularFile)
+                    .filter(path -> matchesPattern(path.getFileName().toString()))
+                    .toList();
         }
-        
-        return newDocuments;
+    }
+
+    /**
+     * Decides which candidates need indexing.
+     * A tracked file whose size and modification time are unchanged is skipped without being read.
+     * Otherwise the file is hashed: the same hash only refreshes the record, a different hash means it was edited
+     * and is re-indexed, and an unknown filename whose hash is already tracked is a rename or copy of indexed content
+     * @param candidates files to check
+     * @param filesInDirectory names of every file currently in the docs directory
+     * @return the documents that need to go through the pipeline
+     */
+    private List<Path> selectDocumentsToProcess(List<Path> candidates, Set<String> filesInDirectory) {
+        Map<String, ProcessedDocument> tracked;
+        try {
+            // one query for the whole directory
+            tracked = processedDocumentRepository.findByFilenameIn(filesInDirectory).stream()
+                    .collect(Collectors.toMap(ProcessedDocument::getFilename, Function.identity()));
+        } catch (Exception e) {
+            // If there's an error checking the database (e.g., table doesn't exist yet),
+            // assume the documents are new and need processing
+            logger.warn("Error checking processed documents in database, will process all {}: {}", candidates.size(), e.getMessage());
+            return candidates;
+        }
+
+        List<Path> documentsToProcess = new ArrayList<>();
+        Map<String, Path> untrackedByHash = new LinkedHashMap<>();
+
+        for (Path path : candidates) {
+            String filename = path.getFileName().toString();
+            ProcessedDocument record = tracked.get(filename);
+
+            try {
+                long size = Files.size(path);
+                long lastModified = Files.getLastModifiedTime(path).toMillis();
+                if (record != null && Objects.equals(record.getFileSize(), size) && Objects.equals(record.getLastModified(), lastModified)) {
+                    logger.debug("Document {} already processed, skipping", filename);
+                    continue;
+                }
+
+                String contentHash = ContentHash.of(path);
+                scannedFingerprints.put(path, new Fingerprint(size, lastModified, contentHash));
+
+                if (record == null) {
+                    if (untrackedByHash.putIfAbsent(contentHash, path) != null) {
+                        documentsToProcess.add(path); // identical new files in one scan; each gets its own chunks
+                    }
+                } else if (record.getContentHash() == null) {
+                    // its last attempt failed, or it was tracked before hashes were recorded; either way index it again.
+                    // Chunks whose chunk_hash still matches are kept, and the embedding cache covers the rest
+                    documentsToProcess.add(path);
+                    logger.info("Document {} has no content hash on record, will index it again", filename);
+                } else if (record.getContentHash().equals(contentHash)) {
+                    // touched but not edited: only refresh the record
+                    record.setContentHash(contentHash);
+                    record.setFileSize(size);
+                    record.setLastModified(lastModified);
+                    processedDocumentRepository.save(record);
+                    scannedFingerprints.remove(path);
+                    logger.debug("Document {} unchanged, refreshed its tracking record", filename);
+                } else {
+                    documentsToProcess.add(path);
+                    logger.info("Document {} changed since it was indexed, will re-index", filename);
+                }
+            } catch (IOException e) {
+                logger.warn("Error reading document {}, will process: {}", filename, e.getMessage());
+                documentsToProcess.add(path);
+            }
+        }
+
+        if (!untrackedByHash.isEmpty()) {
+            // only docs directory files can have been renamed; an upload with the same content is not the original
+            Map<String, ProcessedDocument> trackedByHash = processedDocumentRepository.findByContentHashIn(untrackedByHash.keySet()).stream()
+                    .filter(record -> !record.getFilename().startsWith(UPLOADS_PREFIX))
+                    .collect(Collectors.toMap(ProcessedDocument::getContentHash, Function.identity(), (first, second) -> first));
+
+            untrackedByHash.forEach((contentHash, path) -> {
+                String filename = path.getFileName().toString();
+                ProcessedDocument original = trackedByHash.get(contentHash);
+                if (original == null) {
+                    documentsToProcess.add(path);
+                    logger.info("Found new document to process: {}", filename);
+                } else if (!filesInDirectory.contains(original.getFilename())) {
+                    renameDocument(original, path);
+                } else {
+                    // a copy gets chunks of its own, so removing either file leaves the other searchable.
+                    // Its chunks are identical, so the embeddings come from the embedding cache, not the provider
+                    documentsToProcess.add(path);
+                    logger.info("Document {} has the same content as {}, indexing it from cached embeddings", filename, original.getFilename());
+                }
+            });
+        }
+
+        return documentsToProcess;
+    }
+
+    /**
+     * Moves an indexed document's record and chunks to the file's new name
+     * @param original the tracking record under the old name
+     * @param documentPath the file under its new name
+     */
+    private void renameDocument(ProcessedDocument original, Path documentPath) {
+        String oldFilename = original.getFilename();
+        String newFilename = documentPath.getFileName().toString();
+        int relabeled = vectorStoreWriter.relabelSource(oldFilename, newFilename);
+
+        Fingerprint fingerprint = scannedFingerprints.remove(documentPath);
+        original.setFilename(newFilename);
+        original.setLastModified(fingerprint.lastModified());
+        processedDocumentRepository.save(original);
+        logger.info("Document {} was renamed to {}; moved {} chunks without re-embedding", oldFilename, newFilename, relabeled);
     }
 
     /**
@@ -136,7 +241,7 @@ public class DocumentIngestion {
      * @param filename This is the name of the file to be processed
      * @return compares the file name and the temp file; return the result
      */
-    private boolean matchesPattern(String filename) {
+    boolean matchesPattern(String filename) {
         // Simple pattern matching for common document types
         String lowerFilename = filename.toLowerCase();
         return lowerFilename.endsWith(".pdf") || 
@@ -147,87 +252,115 @@ public class DocumentIngestion {
     }
 
     /**
-     * This method accepts a Path representation and extracts its name to a string
-     * That String is converted into a url for the document
-     * We run a check for the document file type; Depending on the type, we will use a different
-     * DocumentReader. The document is then split into manageable chunks and appended with its metadata
-     * Once the document is in chunks, we add them to the vector store to be embedded
+     * This method accepts a Path representation and runs it through the ingestion pipeline
+     * The pipeline reads the document with the reader matching its file type, splits it into chunks
+     * tagged with the source filename, embeds the chunks and writes them to the vector store
      *
      * @param documentPath This is the file path of the document to be processed
      */
     protected void processDocument(Path documentPath) {
-        String filename = documentPath.getFileName().toString();
-        logger.info("Processing document: {}", filename);
-        
-        try {
-            Resource resource = new UrlResource(documentPath.toUri());
-            
-            List<Document> documents;
-            if (filename.toLowerCase().endsWith(".pdf")) {
-                documents = processPdfDocument(resource);
-            } else {
-                // Use Tika for other document types
-                TikaDocumentReader reader = new TikaDocumentReader(resource);
-                documents = reader.read();
-            }
-            
-            logger.info("Read {} documents from {}", documents.size(), filename);
-            
-            // Split documents into smaller chunks
-            List<Document> splitDocuments = textSplitter.apply(documents);
-            logger.info("Split into {} chunks", splitDocuments.size());
-            
-            // Add metadata to track a source document
-            splitDocuments.forEach(doc -> 
-                doc.getMetadata().put("source_filename", filename)
-            );
-            
-            // Add split documents to the vector store
-            try {
-                vectorStore.add(splitDocuments);
-                logger.info("Successfully added {} chunks to vector store", splitDocuments.size());
-            } catch (Exception vectorStoreException) {
-                logger.error("Error adding documents to vector store for {}: {}", filename, vectorStoreException.getMessage(), vectorStoreException);
-                // Don't return here - still save it to a database to track the attempt
+        logger.info("Processing document: {}", documentPath.getFileName());
+        ingestionPipeline.run(List.of(documentPath), scannedHashes(List.of(documentPath)), trackingListener);
+    }
+
+    /**
+     * Indexes an uploaded document that lives outside the docs directory.
+     * Unlike a scan there is no rename or copy detection; chunk hashes still keep unchanged chunks from being embedded again
+     * @param documentPath the spooled upload, named after the original file
+     * @param sourceFilename the upload's own name for tracking and source_filename; see uploadSourceFilename
+     * @param progress notified as the document moves through the pipeline, after the tracking record is updated
+     */
+    public void processUploadedDocument(Path documentPath, String sourceFilename, IngestionListener progress) {
+        logger.info("Processing uploaded document {} as {}", documentPath.getFileName(), sourceFilename);
+        ingestionPipeline.run(List.of(documentPath), Map.of(), path -> sourceFilename,
+                trackingListener(path -> sourceFilename).andThen(progress));
+    }
+
+    /**
+     * @param jobId the upload's job
+     * @param filename the uploaded file's name
+     * @return the name the upload is tracked and chunked under, which no docs directory file or other upload can share
+     */
+    static String uploadSourceFilename(String jobId, String filename) {
+        return UPLOADS_PREFIX + jobId + "/" + filename;
+    }
+
+    /**
+     * @return the hashes computed while scanning these documents, so parsing does not hash them again
+     */
+    private Map<Path, String> scannedHashes(List<Path> documents) {
+        Map<Path, String> hashes = new HashMap<>();
+        for (Path document : documents) {
+            Fingerprint fingerprint = scannedFingerprints.get(document);
+            if (fingerprint != null) {
+                hashes.put(document, fingerprint.contentHash());
             }
-            
-            // logs that this document has been processed (separate transaction)
-            saveProcessedDocument(filename, documentPath, splitDocuments.size());
-            
-            logger.info("Successfully processed {} with {} chunks", filename, splitDocuments.size());
-            
-        } catch (Exception e) {
-            logger.error("Error processing document {}: {}", filename, e.getMessage(), e);
-            // Still try to save it to a database to avoid reprocessing
-            try {
+        }
+        return hashes;
+    }
+
+    private final IngestionListener trackingListener = trackingListener(path -> path.getFileName().toString());
+
+    /**
+     * Records every document that leaves the pipeline, whether it made it to the vector store or not.
+     * A failed document is recorded without a content hash or modification time, so the next scan tries it again
+     * @param sourceFilenames the name each document is tracked under
+     */
+    private IngestionListener trackingListener(Function<Path, String> sourceFilenames) {
+        return new IngestionListener() {
+            @Override
+            public void onStored(Path documentPath, int chunkCount) {
+                String filename = sourceFilenames.apply(documentPath);
                 // logs that this document has been processed (separate transaction)
-                saveProcessedDocument(filename, documentPath, 0);
-                logger.info("Saved failed processing attempt for {} to avoid reprocessing", filename);
-            } catch (Exception saveException) {
-                logger.error("Failed to save processing record for {}: {}", filename, saveException.getMessage());
+                saveProcessedDocument(filename, documentPath, chunkCount);
+                logger.info("Successfully processed {} with {} chunks", filename, chunkCount);
             }
-        }
+
+            @Override
+            public void onFailed(Path documentPath, int chunkCount, Exception e) {
+                String filename = sourceFilenames.apply(documentPath);
+                try {
+                    saveFailedDocument(filename, documentPath, chunkCount);
+                    logger.info("Saved failed processing attempt for {} without a content hash, so it is retried", filename);
+                } catch (Exception saveException) {
+                    logger.error("Failed to save processing record for {}: {}", filename, saveException.getMessage());
+                }
+            }
+        };
     }
 
     /**
      * Logs a successful document injection
+     * Creates the tracking record, or updates it when the document was re-indexed
      * @param filename Ingested file name
      * @param documentPath Ingested file path
      * @param chunkCount Chunks created
      */
     @Transactional
     protected void saveProcessedDocument(String filename, Path documentPath, int chunkCount) {
+        ProcessedDocument processedDoc = processedDocumentRepository.findByFilename(filename)
+                .orElseGet(ProcessedDocument::new);
+        processedDoc.setFilename(filename);
+        processedDoc.setChunkCount(chunkCount);
+        processedDoc.setProcessedAt(LocalDateTime.now());
+
         try {
-            long fileSize = Files.size(documentPath); // size of the document
-            ProcessedDocument processedDoc = new ProcessedDocument(filename, fileSize, chunkCount);
+            Fingerprint fingerprint = scannedFingerprints.remove(documentPath);
+            if (fingerprint == null) {
+                fingerprint = new Fingerprint(Files.size(documentPath), // size of the document
+                        Files.getLastModifiedTime(documentPath).toMillis(), ContentHash.of(documentPath));
+            }
+            processedDoc.setFileSize(fingerprint.size());
+            processedDoc.setLastModified(fingerprint.lastModified());
+            processedDoc.setContentHash(fingerprint.contentHash());
             processedDocumentRepository.save(processedDoc);
             logger.info("Saved processing record for {} with {} chunks", filename, chunkCount);
         } catch (IOException e) {
             logger.error("Error getting file size for {}: {}", filename, e.getMessage());
 
-            //save with size 0 if we cant get actual zise
-            var processedDocument = new ProcessedDocument(filename, 0L, chunkCount);
-            processedDocumentRepository.save(processedDocument);
+            //save with size 0 if we cant get actual zise; without a hash it is re-checked on the next scan
+            processedDoc.setFileSize(0L);
+            processedDocumentRepository.save(processedDoc);
             logger.info("Saved processing record for {} with unknown file size", filename);
         }
         catch (Exception e) {
@@ -237,17 +370,29 @@ public class DocumentIngestion {
     }
 
     /**
-     * Helper to process a PDF Document
-     * @param document The document to be processed
-     * @return The processed document
+     * Records a document that failed in the pipeline.
+     * Its hash and modification time are cleared, so neither the size/mtime check nor the hash check skips it next time,
+     * and it is never taken for the original of a rename. Chunks from an earlier successful run stay searchable
+     * @param filename Failed file name
+     * @param documentPath Failed file path
+     * @param chunkCount Chunks created before the failure
      */
-    private List<Document> processPdfDocument(Resource document) {
+    @Transactional
+    protected void saveFailedDocument(String filename, Path documentPath, int chunkCount) {
+        scannedFingerprints.remove(documentPath);
+        ProcessedDocument processedDoc = processedDocumentRepository.findByFilename(filename)
+                .orElseGet(ProcessedDocument::new);
+        processedDoc.setFilename(filename);
+        processedDoc.setChunkCount(chunkCount);
+        processedDoc.setProcessedAt(LocalDateTime.now());
+        processedDoc.setContentHash(null);
+        processedDoc.setLastModified(null);
         try {
-            return readParagraph(document);
-        } catch (IllegalArgumentException e) {
-            logger.warn("ParagraphPdfDocumentReader failed (no TOC found), falling back to PagePdfDocumentReader: {}", e.getMessage());
-            return readPage(document);
+            processedDoc.setFileSize(Files.size(documentPath));
+        } catch (IOException e) {
+            processedDoc.setFileSize(0L);
         }
+        processedDocumentRepository.save(processedDoc);
     }
 
     /**
@@ -255,95 +400,54 @@ public class DocumentIngestion {
      * @return The processed document
      */
     public List<Document> linkedBagImplementations() {
-       try {
-           return readParagraph(stackImplementations);
-       } catch (IllegalArgumentException e) {
-           logger.warn("ParagraphPdfDocumentReader failed (no TOC found), falling back to PagePdfDocumentReader: {}", e.getMessage());
-           return readPage(stackImplementations);
-       }
+        return documentParser.parsePdf(stackImplementations);
     }
 
     /**
-     * Document Ingestion using Page reader
-     * @param resource the PDF resource to read
-     * @return the read document
-     */
-    private List<Document> readPage(Resource resource) {
-        PagePdfDocumentReader pageText = new PagePdfDocumentReader(
-                resource,
-                PdfDocumentReaderConfig.builder()
-                        .withPageTopMargin(0)
-                        .withPageExtractedTextFormatter(ExtractedTextFormatter.builder()
-                                .withNumberOfTopTextLinesToDelete(0)
-                                .build())
-                        .withPagesPerDocument(1)
-                        .build()
-        );
-
-        return pageText.read();
-    }
-
-    /**
-     * Document Ingestion using Paragraph Reader
-     * @param resource the PDF resource to read
-     * @return the read document
-     */
-    private List<Document> readParagraph(Resource resource) {
-        ParagraphPdfDocumentReader paragraphText = new ParagraphPdfDocumentReader(
-                resource,
-                PdfDocumentReaderConfig.builder()
-                        .withPageTopMargin(0)
-                        .withPageExtractedTextFormatter(ExtractedTextFormatter.builder()
-                                .withNumberOfTopTextLinesToDelete(0)
-                                .build())
-                        .withPagesPerDocument(1)
-                        .build()
-        );
-
-        return paragraphText.read();
-    }
-
-    /**
-     * This method extracts text from any given document using Tika
-     * @param file The document be extracted
-     * @return text extracted from document
-     * @throws IOException Input/Output Problems
-     * @throws TikaException TikaSpecific Problems
-     */
-    public String extractTextFromDocument(MultipartFile file) throws IOException, TikaException {
-        Tika tika = new Tika(); // Tika instance
-        return  tika.parseToString(file.getInputStream()); // tika parses the inputted file's input stream
-    }
-
-    /**
-     *
+     * Processes a document if it is new or has changed since it was indexed
      * @param filename the new document to be processed
      * @throws IOException Input/Output Problems
      */
     public void processNewDocument(String filename) throws IOException {
         Path documentPath = Paths.get(documentDirectory.getURI()).resolve(filename);
-        if (Files.exists(documentPath) && !processedDocumentRepository.existsByFilename(filename)) {
-            processDocument(documentPath);
-        } else if (processedDocumentRepository.existsByFilename(filename)) {
+        if (!Files.exists(documentPath)) {
+            logger.warn("Document {} not found", filename);
+            return;
+        }
+
+        Set<String> filesInDirectory = listDocuments().stream()
+                .map(path -> path.getFileName().toString())
+                .collect(Collectors.toSet());
+        if (selectDocumentsToProcess(List.of(documentPath), filesInDirectory).isEmpty()) {
             logger.info("Document {} already processed", filename);
         } else {
-            logger.warn("Document {} not found", filename);
+            processDocument(documentPath);
         }
     }
 
     /**
      * This method removes a document from the database
+     * Its chunks are deleted from the vector store in the same transaction as its tracking record,
+     * so a failure leaves both in place and the document is never half removed
      * @param filename The documents file path
      */
     @Transactional
     public void removeDocument(String filename) {
+        int deletedChunks = vectorStoreWriter.deleteBySource(filename);
         if (processedDocumentRepository.existsByFilename(filename)) {
-            // Note: Spring AI VectorStore doesn't have a direct way to delete by metadata
-            // We may need to implement custom deletion logic based on your vector store
             processedDocumentRepository.deleteByFilename(filename);
-            logger.info("Removed document {} from tracking", filename);
+            logger.info("Removed document {} from tracking and {} chunks from the vector store", filename, deletedChunks);
         } else {
-            logger.warn("Document {} not found in tracking", filename);
+            logger.warn("Document {} not found in tracking; removed {} orphaned chunks", filename, deletedChunks);
         }
     }
+
+    /**
+     * What was read from disk for a file during a scan
+     * @param size file size in bytes
+     * @param lastModified modification time in epoch millis
+     * @param contentHash SHA-256 of the file's bytes
+     */
+    private record Fingerprint(long size, long lastModified, String contentHash) {
+    }
 }
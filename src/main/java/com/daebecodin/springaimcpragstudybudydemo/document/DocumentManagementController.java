@@ -2,10 +2,14 @@ package com.daebecodin.springaimcpragstudybudydemo.document;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.List;
 
 @RestController
@@ -16,11 +20,17 @@ public class DocumentManagementController {
     
     private final DocumentIngestion documentIngestion;
     private final ProcessedDocumentRepository processedDocumentRepository;
+    private final IngestionJobService ingestionJobService;
+    private final DocumentScanService documentScanService;
     
     public DocumentManagementController(DocumentIngestion documentIngestion, 
-                                      ProcessedDocumentRepository processedDocumentRepository) {
+                                      ProcessedDocumentRepository processedDocumentRepository,
+                                      IngestionJobService ingestionJobService,
+                                      DocumentScanService documentScanService) {
         this.documentIngestion = documentIngestion;
         this.processedDocumentRepository = processedDocumentRepository;
+        this.ingestionJobService = ingestionJobService;
+        this.documentScanService = documentScanService;
     }
     
     /**
@@ -46,6 +56,44 @@ public class DocumentManagementController {
         }
     }
     
+    /**
+     * Upload a document and index it in the background
+     * Returns 202 with the job straight away; poll the Location header for progress
+     */
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<IngestionJob> uploadDocument(@RequestParam("file") MultipartFile file) {
+        try {
+            IngestionJob job = ingestionJobService.submit(file);
+            URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                    .path("/api/documents/jobs/{jobId}")
+                    .buildAndExpand(job.getId())
+                    .toUri();
+            return ResponseEntity.accepted().location(location).body(job);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected upload {}: {}", file.getOriginalFilename(), e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            logger.error("Error spooling upload {}: {}", file.getOriginalFilename(), e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    /**
+     * Status and progress of an upload job
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<IngestionJob> getJob(@PathVariable String jobId) {
+        return ResponseEntity.of(ingestionJobService.find(jobId));
+    }
+    
+    /**
+     * All upload jobs still retained, newest first
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<List<IngestionJob>> getJobs() {
+        return ResponseEntity.ok(ingestionJobService.findAll());
+    }
+    
     /**
      * Remove a document from tracking
      */
@@ -61,17 +109,32 @@ public class DocumentManagementController {
     }
     
     /**
-     * Trigger re-scan of documents directory for new files
+     * Remove an uploaded document, which is tracked under uploads/{jobId}/{filename}
+     */
+    @DeleteMapping("/uploads/{jobId}/{filename}")
+    public ResponseEntity<String> removeUploadedDocument(@PathVariable String jobId, @PathVariable String filename) {
+        return removeDocument(DocumentIngestion.uploadSourceFilename(jobId, filename));
+    }
+    
+    /**
+     * Trigger re-scan of documents directory for new or changed files
+     * Returns 202 with the scan straight away; if a scan is already running, that one is returned
      */
     @PostMapping("/rescan")
-    public ResponseEntity<String> rescanDocuments() {
-        try {
-            // This would trigger the init method logic
-            // For now, we'll just return a message
-            return ResponseEntity.ok("Document rescan completed. Check logs for details.");
-        } catch (Exception e) {
-            logger.error("Error during document rescan: {}", e.getMessage());
-            return ResponseEntity.badRequest().body("Error during rescan: " + e.getMessage());
-        }
+    public ResponseEntity<DocumentScan> rescanDocuments() {
+        DocumentScan scan = documentScanService.start();
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/documents/scan")
+                .build()
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(scan);
+    }
+    
+    /**
+     * Status and progress of the running scan, or of the last one
+     */
+    @GetMapping("/scan")
+    public ResponseEntity<DocumentScan> getScan() {
+        return ResponseEntity.of(documentScanService.current());
     }
 }
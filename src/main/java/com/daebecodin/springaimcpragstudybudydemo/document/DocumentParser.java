@@ -0,0 +1,336 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDDocumentOutline;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineNode;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Turns a file on disk into Spring AI documents.
+ * PDFs are opened once with PDFBox and every page becomes a document; when the PDF has an outline, each page is
+ * tagged with its section's title and start page. Text is extracted one page at a time, even inside a section, and
+ * written straight to a parsed-text cache on disk (one JSON line per page, keyed by the file's content hash),
+ * so a 1,000 page book, even one whose outline is a single chapter, never sits in memory and re-splitting the same file with
+ * different splitter settings reads the cache instead of running PDFBox again.
+ * The cache is bounded by max-size and max-age, evicting the least recently used entries.
+ * Every other supported type goes through Tika
+ */
+@Component
+public class DocumentParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentParser.class);
+
+    // bump when extraction changes so old cache files are not reused
+    private static final String EXTRACTION_VERSION = "v2";
+    private static final String CACHE_SUFFIX = ".ndjson";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // entries used this recently may still be streamed by the split stage, so size eviction leaves them alone
+    private static final Duration IN_USE = Duration.ofMinutes(10);
+
+    private final ObjectMapper objectMapper;
+    private final ExtractedTextFormatter textFormatter = ExtractedTextFormatter.builder()
+            .withNumberOfTopTextLinesToDelete(0)
+            .build();
+
+    @Value("${ingestion.parsed-text-cache.dir:${java.io.tmpdir}/study-buddy/parsed-text}")
+    private String cacheDirectory;
+
+    @Value("${ingestion.parsed-text-cache.max-size:1GB}")
+    private DataSize maxSize;
+
+    @Value("${ingestion.parsed-text-cache.max-age:30d}")
+    private Duration maxAge;
+
+    public DocumentParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Makes sure the document's text is in the parsed-text cache, extracting it if it is not
+     * @param documentPath the file to read
+     * @param contentHash the file's SHA-256 if the caller already has it (the scan does); null to hash it here
+     * @param progress told the fraction of the file read so far, 0 to 1; PDFs report after every page
+     * @return the cache file holding the document's text; read it with readPages
+     * @throws IOException Input/Output Problems
+     */
+    public Path parse(Path documentPath, String contentHash, DoubleConsumer progress) throws IOException {
+        String hash = contentHash != null ? contentHash : ContentHash.of(documentPath);
+        Path cacheFile = Paths.get(cacheDirectory).resolve(hash + "-" + EXTRACTION_VERSION + CACHE_SUFFIX);
+        if (Files.exists(cacheFile)) {
+            logger.info("Using cached text for {}", documentPath.getFileName());
+            touch(cacheFile); // eviction goes by last use
+            return cacheFile;
+        }
+
+        Files.createDirectories(cacheFile.getParent());
+        // write to a temp file first so a crash never leaves a half written cache entry behind
+        Path partial = cacheFile.resolveSibling(cacheFile.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            Consumer<Document> sink = document -> writeLine(writer, document);
+            String filename = documentPath.getFileName().toString();
+
+            if (filename.toLowerCase().endsWith(".pdf")) {
+                try (PDDocument pdf = Loader.loadPDF(documentPath.toFile())) {
+                    extractPdf(pdf, filename, sink, progress);
+                }
+            } else {
+                // Use Tika for other document types; Tika reads the whole file in one go, so there is no progress until it is done
+                TikaDocumentReader reader = new TikaDocumentReader(new UrlResource(documentPath.toUri()));
+                reader.read().forEach(sink);
+                progress.accept(1.0);
+            }
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(partial);
+            throw e.getCause(); // a write from the sink failed
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+
+        Files.move(partial, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        evict();
+        return cacheFile;
+    }
+
+    /**
+     * Keeps the cache within max-age and max-size: entries unused for max-age go first, then the least recently used
+     * until the rest fits. Entries used in the last few minutes are kept, since a split may still be reading them.
+     * Leftover temp files from a crash are removed too
+     */
+    synchronized void evict() {
+        Path directory = Paths.get(cacheDirectory);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Instant now = Instant.now();
+        List<CacheEntry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                try {
+                    Instant lastUsed = Files.getLastModifiedTime(file).toInstant();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        if (lastUsed.isBefore(now.minus(IN_USE))) {
+                            Files.deleteIfExists(file);
+                        }
+                    } else if (name.endsWith(CACHE_SUFFIX)) {
+                        entries.add(new CacheEntry(file, Files.size(file), lastUsed));
+                    }
+                } catch (IOException e) {
+                    logger.debug("Skipping parsed-text cache file {}: {}", name, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not list the parsed-text cache: {}", e.getMessage());
+            return;
+        }
+
+        entries.sort(Comparator.comparing(CacheEntry::lastUsed));
+        long totalBytes = entries.stream().mapToLong(CacheEntry::bytes).sum();
+        int removed = 0;
+        for (CacheEntry entry : entries) {
+            boolean expired = entry.lastUsed().isBefore(now.minus(maxAge));
+            boolean overSize = totalBytes > maxSize.toBytes() && entry.lastUsed().isBefore(now.minus(IN_USE));
+            if (!expired && !overSize) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(entry.file());
+                totalBytes -= entry.bytes();
+                removed++;
+            } catch (IOException e) {
+                logger.debug("Could not evict {}: {}", entry.file().getFileName(), e.getMessage());
+            }
+        }
+        if (removed > 0) {
+            logger.info("Evicted {} parsed-text cache entries; {} bytes remain", removed, totalBytes);
+        }
+    }
+
+    private static void touch(Path cacheFile) {
+        try {
+            Files.setLastModifiedTime(cacheFile, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            logger.debug("Could not touch {}: {}", cacheFile.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Reads documents back from the parsed-text cache one at a time
+     * @param cacheFile a file returned by parse
+     * @return a lazy stream of documents; close it when done
+     * @throws IOException Input/Output Problems
+     */
+    public Stream<Document> readPages(Path cacheFile) throws IOException {
+        return Files.lines(cacheFile, StandardCharsets.UTF_8).map(this::readLine);
+    }
+
+    /**
+     * Reads a PDF resource fully into memory; used where the caller needs every page at once
+     * @param document The document to be processed
+     * @return The processed document
+     */
+    public List<Document> parsePdf(Resource document) {
+        List<Document> documents = new ArrayList<>();
+        try (InputStream in = document.getInputStream();
+             PDDocument pdf = Loader.loadPDF(new RandomAccessReadBuffer(in))) {
+            extractPdf(pdf, document.getFilename(), documents::add, fraction -> {
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read PDF " + document.getFilename(), e);
+        }
+        return documents;
+    }
+
+    /**
+     * Extracts a PDF one page at a time.
+     * Sections come from the outline; pages before the first outline entry are kept as their own section.
+     * A section's pages keep the section's start and end as page_number and end_page_number, so everything grouped by
+     * page_number (the quiz bank's sections) still sees whole sections; pdf_page_number is the page itself
+     * @param pdf the open PDF
+     * @param filename used for the file_name metadata
+     * @param sink receives each page as soon as its text is extracted
+     * @param progress told the fraction of pages extracted after each page
+     */
+    private void extractPdf(PDDocument pdf, String filename, Consumer<Document> sink, DoubleConsumer progress) throws IOException {
+        int pageCount = pdf.getNumberOfPages();
+        TreeMap<Integer, String> sectionStarts = outlineSections(pdf);
+        PDFTextStripper stripper = new PDFTextStripper();
+
+        if (sectionStarts.isEmpty()) {
+            logger.debug("{} has no outline, reading it page by page", filename);
+            for (int page = 1; page <= pageCount; page++) {
+                sink.accept(extract(pdf, stripper, filename, page, page, page, null));
+                progress.accept((double) page / pageCount);
+            }
+            return;
+        }
+
+        if (sectionStarts.firstKey() > 1) {
+            sectionStarts.put(1, null); // front matter before the first outline entry
+        }
+        List<Integer> starts = new ArrayList<>(sectionStarts.keySet());
+        for (int i = 0; i < starts.size(); i++) {
+            int start = starts.get(i);
+            int end = i + 1 < starts.size() ? starts.get(i + 1) - 1 : pageCount;
+            // a section can be a whole book; only one page of it is ever held
+            for (int page = start; page <= end; page++) {
+                sink.accept(extract(pdf, stripper, filename, page, start, end, sectionStarts.get(start)));
+                progress.accept((double) page / pageCount);
+            }
+        }
+    }
+
+    /**
+     * @param page the page to extract
+     * @param sectionStart first page of the page's section; the page itself when there is no outline
+     * @param sectionEnd last page of the section
+     * @param title the section's outline title, or null
+     */
+    private Document extract(PDDocument pdf, PDFTextStripper stripper, String filename,
+                             int page, int sectionStart, int sectionEnd, String title) throws IOException {
+        stripper.setStartPage(page);
+        stripper.setEndPage(page);
+        String text = textFormatter.format(stripper.getText(pdf));
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("page_number", sectionStart);
+        metadata.put("end_page_number", sectionEnd);
+        metadata.put("pdf_page_number", page);
+        metadata.put("file_name", filename);
+        if (title != null) {
+            metadata.put("title", title);
+        }
+        return new Document(text, metadata);
+    }
+
+    /**
+     * Flattens the outline into section start pages (1-based) mapped to the first title that starts there
+     * @return empty when the PDF has no usable outline
+     */
+    private TreeMap<Integer, String> outlineSections(PDDocument pdf) throws IOException {
+        TreeMap<Integer, String> sectionStarts = new TreeMap<>();
+        PDDocumentOutline outline = pdf.getDocumentCatalog().getDocumentOutline();
+        if (outline != null) {
+            collectSections(pdf, outline, sectionStarts);
+        }
+        return sectionStarts;
+    }
+
+    private void collectSections(PDDocument pdf, PDOutlineNode node, Map<Integer, String> sectionStarts) throws IOException {
+        for (PDOutlineItem item : node.children()) {
+            PDPage page = item.findDestinationPage(pdf);
+            int pageIndex = page == null ? -1 : pdf.getPages().indexOf(page);
+            if (pageIndex >= 0) {
+                sectionStarts.putIfAbsent(pageIndex + 1, item.getTitle());
+            }
+            collectSections(pdf, item, sectionStarts);
+        }
+    }
+
+    private void writeLine(BufferedWriter writer, Document document) {
+        try {
+            writer.write(objectMapper.writeValueAsString(new ParsedPage(document.getText(), document.getMetadata())));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Document readLine(String line) {
+        try {
+            ParsedPage page = objectMapper.readValue(line, ParsedPage.class);
+            return new Document(page.text(), new HashMap<>(page.metadata()));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Corrupt parsed-text cache entry", e);
+        }
+    }
+
+    private record CacheEntry(Path file, long bytes, Instant lastUsed) {
+    }
+
+    /**
+     * One line of the parsed-text cache
+     */
+    private record ParsedPage(String text, Map<String, Object> metadata) {
+    }
+}
@@ -0,0 +1,159 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One scan of the docs directory: finding new or changed documents and indexing them.
+ * Acts as the pipeline listener for every document in the scan, so progress is updated from the pipeline's
+ * worker threads and read by the health indicator and the scan endpoint
+ */
+public class DocumentScan implements IngestionListener {
+
+    public enum State { SCANNING, INDEXING, COMPLETED, FAILED }
+
+    private final Instant startedAt = Instant.now();
+    // per document: up to 0.5 while parsing, up to 0.9 while embedding, 1 once stored or failed
+    private final Map<Path, Double> documentProgress = new ConcurrentHashMap<>();
+    private final Map<Path, Long> documentBytes = new ConcurrentHashMap<>();
+    private final Map<Path, Integer> chunksToEmbed = new ConcurrentHashMap<>();
+
+    private volatile State state = State.SCANNING;
+    private volatile long bytesTotal;
+    private volatile int documentsTotal;
+    private volatile int documentsIndexed;
+    private volatile int documentsFailed;
+    private volatile String error;
+    private volatile Instant finishedAt;
+
+    /**
+     * The directory has been checked; these documents will go through the pipeline
+     */
+    void begin(List<Path> documents) {
+        long total = 0;
+        for (Path document : documents) {
+            long bytes;
+            try {
+                bytes = Files.size(document);
+            } catch (IOException e) {
+                bytes = 0;
+            }
+            documentBytes.put(document, bytes);
+            documentProgress.put(document, 0.0);
+            total += bytes;
+        }
+        bytesTotal = total;
+        documentsTotal = documents.size();
+        state = State.INDEXING;
+    }
+
+    @Override
+    public void onParseProgress(Path documentPath, long bytesParsed) {
+        long bytes = documentBytes.getOrDefault(documentPath, 0L);
+        if (bytes > 0) {
+            documentProgress.put(documentPath, 0.5 * Math.min(1.0, (double) bytesParsed / bytes));
+        }
+    }
+
+    @Override
+    public void onParsed(Path documentPath, long bytes) {
+        documentProgress.put(documentPath, 0.5);
+    }
+
+    @Override
+    public void onSplit(Path documentPath, int chunkCount, int changedChunks) {
+        chunksToEmbed.put(documentPath, changedChunks);
+    }
+
+    @Override
+    public void onEmbedProgress(Path documentPath, int chunksEmbedded) {
+        int toEmbed = chunksToEmbed.getOrDefault(documentPath, 0);
+        if (toEmbed > 0) {
+            documentProgress.put(documentPath, 0.5 + 0.4 * Math.min(1.0, (double) chunksEmbedded / toEmbed));
+        }
+    }
+
+    @Override
+    public void onEmbedded(Path documentPath, int chunkCount) {
+        documentProgress.put(documentPath, 0.9);
+    }
+
+    @Override
+    public synchronized void onStored(Path documentPath, int chunkCount) {
+        documentProgress.put(documentPath, 1.0);
+        documentsIndexed++;
+    }
+
+    @Override
+    public synchronized void onFailed(Path documentPath, int chunkCount, Exception e) {
+        documentProgress.put(documentPath, 1.0);
+        documentsFailed++;
+    }
+
+    void finish(State finalState, String errorMessage) {
+        error = errorMessage;
+        finishedAt = Instant.now();
+        state = finalState;
+    }
+
+    boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getDocumentsTotal() {
+        return documentsTotal;
+    }
+
+    public int getDocumentsIndexed() {
+        return documentsIndexed;
+    }
+
+    public int getDocumentsFailed() {
+        return documentsFailed;
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    /**
+     * Each document counts by its size: parsing is the first half of it, embedding and storing the second.
+     * Documents are done in parallel, so this moves as each one passes a stage
+     * @return 0 to 100
+     */
+    public int getPercentComplete() {
+        if (isFinished()) {
+            return 100;
+        }
+        if (state == State.SCANNING || documentsTotal == 0) {
+            return 0;
+        }
+        double done = 0;
+        for (Map.Entry<Path, Double> document : documentProgress.entrySet()) {
+            double weight = bytesTotal == 0 ? 1.0 / documentsTotal : (double) documentBytes.getOrDefault(document.getKey(), 0L) / bytesTotal;
+            done += weight * document.getValue();
+        }
+        return (int) Math.min(99, Math.round(done * 100));
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+}
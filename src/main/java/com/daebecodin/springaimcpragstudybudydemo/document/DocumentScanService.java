@@ -0,0 +1,94 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Scans the docs directory in the background, so the application starts serving before the corpus is indexed.
+ * The first scan starts once the application is ready; /api/documents/rescan starts another.
+ * Only one scan runs at a time: asking for a scan while one is running returns the running one.
+ * Until the first scan finishes the ingestion health indicator reports INDEXING, which keeps the readiness probe out of rotation
+ */
+@Service
+public class DocumentScanService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentScanService.class);
+
+    private final DocumentIngestion documentIngestion;
+
+    private volatile DocumentScan current;
+    private volatile boolean initialScanFinished;
+    private Thread scanThread;
+
+    @Value("${ingestion.scan.on-startup:true}")
+    private boolean scanOnStartup;
+
+    public DocumentScanService(DocumentIngestion documentIngestion) {
+        this.documentIngestion = documentIngestion;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void onApplicationReady() {
+        if (scanOnStartup) {
+            start();
+        } else {
+            initialScanFinished = true;
+        }
+    }
+
+    /**
+     * Starts a scan in the background
+     * @return the new scan, or the one already running
+     */
+    public synchronized DocumentScan start() {
+        if (current != null && !current.isFinished()) {
+            return current;
+        }
+        DocumentScan scan = new DocumentScan();
+        current = scan;
+        scanThread = Thread.ofVirtual().name("document-scan").start(() -> run(scan));
+        return scan;
+    }
+
+    /**
+     * @return the running scan, or the last one to finish; empty before the first scan starts
+     */
+    public Optional<DocumentScan> current() {
+        return Optional.ofNullable(current);
+    }
+
+    /**
+     * @return whether the scan started with the application has finished, successfully or not
+     */
+    public boolean isInitialScanFinished() {
+        return initialScanFinished;
+    }
+
+    private void run(DocumentScan scan) {
+        try {
+            documentIngestion.scan(scan);
+            scan.finish(DocumentScan.State.COMPLETED, null);
+            logger.info("Document scan finished: {} indexed, {} failed", scan.getDocumentsIndexed(), scan.getDocumentsFailed());
+        } catch (Exception e) {
+            // already logged by the scan; the documents indexed before the failure are still searchable
+            scan.finish(DocumentScan.State.FAILED, Objects.requireNonNullElse(e.getMessage(), e.getClass().getSimpleName()));
+        } finally {
+            initialScanFinished = true;
+        }
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        if (scanThread != null) {
+            scanThread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * The "ingestion" health contributor, part of the readiness group.
+ * Reports INDEXING, mapped to 503, with the scan's progress until the startup scan finishes, then UP.
+ * When the last scan failed, or any of its documents did, it reports DEGRADED instead: mapped to 200, because what was
+ * indexed can still be served, but distinct from UP so monitoring sees the corpus is incomplete.
+ * Failed documents are retried by the next scan, and a rescan that indexes everything clears it
+ */
+@Component
+public class IngestionHealthIndicator implements HealthIndicator {
+
+    public static final Status INDEXING = new Status("INDEXING", "Indexing the docs directory");
+    public static final Status DEGRADED = new Status("DEGRADED", "The last document scan failed or left documents unindexed");
+
+    private final DocumentScanService documentScanService;
+
+    public IngestionHealthIndicator(DocumentScanService documentScanService) {
+        this.documentScanService = documentScanService;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder health = Health.status(status());
+        documentScanService.current().ifPresent(scan -> {
+            health.withDetail("state", scan.getState())
+                    .withDetail("percentComplete", scan.getPercentComplete())
+                    .withDetail("documentsTotal", scan.getDocumentsTotal())
+                    .withDetail("documentsIndexed", scan.getDocumentsIndexed())
+                    .withDetail("documentsFailed", scan.getDocumentsFailed())
+                    .withDetail("startedAt", scan.getStartedAt());
+            if (scan.getFinishedAt() != null) {
+                health.withDetail("finishedAt", scan.getFinishedAt());
+            }
+            if (scan.getError() != null) {
+                health.withDetail("error", scan.getError());
+            }
+        });
+        return health.build();
+    }
+
+    private Status status() {
+        if (!documentScanService.isInitialScanFinished()) {
+            return INDEXING;
+        }
+        // an embedding outage fails every document but the scan itself still completes
+        boolean lastScanFailed = documentScanService.current()
+                .map(scan -> scan.getState() == DocumentScan.State.FAILED || scan.getDocumentsFailed() > 0)
+                .orElse(false);
+        return lastScanFailed ? DEGRADED : Status.UP;
+    }
+}
@@ -0,0 +1,153 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * An uploaded document being indexed in the background.
+ * Acts as the pipeline listener for its document, so its progress fields are updated
+ * from the pipeline's worker threads and read by the status endpoint
+ */
+public class IngestionJob implements IngestionListener {
+
+    public enum State { QUEUED, PARSING, SPLITTING, EMBEDDING, STORING, COMPLETED, FAILED }
+
+    private final String id;
+    private final String filename;
+    private final String sourceFilename;
+    private final long bytesTotal;
+    private final Instant submittedAt = Instant.now();
+
+    private volatile State state = State.QUEUED;
+    private volatile long bytesParsed;
+    private volatile int chunksTotal;
+    private volatile int chunksToEmbed;
+    private volatile int chunksEmbedded;
+    private volatile String error;
+    private volatile Instant finishedAt;
+
+    IngestionJob(String id, String filename, String sourceFilename, long bytesTotal) {
+        this.id = id;
+        this.filename = filename;
+        this.sourceFilename = sourceFilename;
+        this.bytesTotal = bytesTotal;
+    }
+
+    void start() {
+        state = State.PARSING;
+    }
+
+    @Override
+    public void onParseProgress(Path documentPath, long bytes) {
+        bytesParsed = bytes;
+    }
+
+    @Override
+    public void onParsed(Path documentPath, long bytes) {
+        bytesParsed = bytes;
+        state = State.SPLITTING;
+    }
+
+    @Override
+    public void onSplit(Path documentPath, int chunkCount, int changedChunks) {
+        chunksTotal = chunkCount;
+        chunksToEmbed = changedChunks;
+        state = State.EMBEDDING;
+    }
+
+    @Override
+    public void onEmbedProgress(Path documentPath, int chunkCount) {
+        chunksEmbedded = chunkCount;
+    }
+
+    @Override
+    public void onEmbedded(Path documentPath, int chunkCount) {
+        chunksEmbedded = chunkCount;
+        state = State.STORING;
+    }
+
+    @Override
+    public void onStored(Path documentPath, int chunkCount) {
+        finish(State.COMPLETED, null);
+    }
+
+    @Override
+    public void onFailed(Path documentPath, int chunkCount, Exception e) {
+        finish(State.FAILED, e.getMessage());
+    }
+
+    void finish(State finalState, String errorMessage) {
+        error = errorMessage;
+        finishedAt = Instant.now();
+        state = finalState;
+    }
+
+    boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return what the upload is tracked and chunked under, uploads/&lt;jobId&gt;/&lt;filename&gt;
+     */
+    public String getSourceFilename() {
+        return sourceFilename;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public long getBytesParsed() {
+        return bytesParsed;
+    }
+
+    public int getChunksTotal() {
+        return chunksTotal;
+    }
+
+    public int getChunksToEmbed() {
+        return chunksToEmbed;
+    }
+
+    public int getChunksEmbedded() {
+        return chunksEmbedded;
+    }
+
+    /**
+     * Rough completion: parsing counts for the first half, embedding for the second.
+     * Both move while their stage runs: PDFs report each extracted page or section, embedding reports each returned batch
+     * @return 0 to 100
+     */
+    public int getPercentComplete() {
+        if (state == State.COMPLETED) {
+            return 100;
+        }
+        double parsed = bytesTotal == 0 ? 0 : (double) bytesParsed / bytesTotal;
+        double embedded = chunksToEmbed == 0 ? (state.compareTo(State.EMBEDDING) > 0 ? 1 : 0) : (double) chunksEmbedded / chunksToEmbed;
+        return (int) Math.min(99, Math.round(parsed * 50 + embedded * 50));
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+}
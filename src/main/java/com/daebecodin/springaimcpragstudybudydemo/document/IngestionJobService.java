@@ -0,0 +1,148 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs uploaded documents through the ingestion pipeline in the background.
+ * The upload is spooled to disk (never held in heap), a job is queued and its id is returned straight away;
+ * callers poll the job for progress. At most max-concurrent jobs index at once, the rest wait their turn
+ */
+@Service
+public class IngestionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+
+    private final DocumentIngestion documentIngestion;
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService jobExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ingest-job-", 0).factory());
+    private final Semaphore runningJobs;
+
+    @Value("${ingestion.jobs.spool-dir:${java.io.tmpdir}/study-buddy/uploads}")
+    private String spoolDirectory;
+
+    @Value("${ingestion.jobs.retention:1h}")
+    private Duration retention;
+
+    public IngestionJobService(DocumentIngestion documentIngestion,
+                               @Value("${ingestion.jobs.max-concurrent:2}") int maxConcurrentJobs) {
+        this.documentIngestion = documentIngestion;
+        this.runningJobs = new Semaphore(maxConcurrentJobs);
+    }
+
+    /**
+     * Spools an upload to disk and queues it for indexing
+     * @param file the uploaded document
+     * @return the queued job
+     * @throws IOException if the upload could not be written to the spool directory
+     * @throws IllegalArgumentException if the file type is not one the pipeline can read
+     */
+    public IngestionJob submit(MultipartFile file) throws IOException {
+        evictFinishedJobs();
+
+        String originalFilename = file.getOriginalFilename();
+        if (originalFilename == null || originalFilename.isBlank() || !documentIngestion.matchesPattern(originalFilename)) {
+            throw new IllegalArgumentException("Unsupported document type: " + originalFilename);
+        }
+        String filename = Paths.get(originalFilename).getFileName().toString();
+        String jobId = UUID.randomUUID().toString();
+        // one directory per job keeps the original filename, which the parser goes by
+        Path jobDirectory = Paths.get(spoolDirectory).resolve(jobId);
+        Files.createDirectories(jobDirectory);
+        Path spooled = jobDirectory.resolve(filename);
+        try {
+            file.transferTo(spooled); // streams from the container's temp file
+        } catch (IOException e) {
+            deleteQuietly(jobDirectory);
+            throw e;
+        }
+
+        IngestionJob job = new IngestionJob(jobId, filename, DocumentIngestion.uploadSourceFilename(jobId, filename),
+                Files.size(spooled));
+        jobs.put(jobId, job);
+        jobExecutor.execute(() -> run(job, spooled));
+        logger.info("Queued ingestion job {} for {} ({} bytes)", jobId, filename, job.getBytesTotal());
+        return job;
+    }
+
+    /**
+     * @param jobId the id returned on upload
+     * @return the job, if it is still known
+     */
+    public Optional<IngestionJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * @return every known job, newest first
+     */
+    public List<IngestionJob> findAll() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(IngestionJob::getSubmittedAt).reversed())
+                .toList();
+    }
+
+    private void run(IngestionJob job, Path spooled) {
+        try {
+            runningJobs.acquire();
+            try {
+                job.start();
+                documentIngestion.processUploadedDocument(spooled, job.getSourceFilename(), job);
+            } finally {
+                runningJobs.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.finish(IngestionJob.State.FAILED, "Interrupted before indexing finished");
+        } catch (Exception e) {
+            logger.error("Ingestion job {} failed: {}", job.getId(), e.getMessage(), e);
+            job.finish(IngestionJob.State.FAILED, e.getMessage());
+        } finally {
+            if (!job.isFinished()) {
+                job.finish(IngestionJob.State.FAILED, "Document was dropped by the pipeline");
+            }
+            // the parsed text is cached by content hash, so the spooled copy is no longer needed
+            deleteQuietly(spooled.getParent());
+        }
+    }
+
+    private void evictFinishedJobs() {
+        Instant oldest = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(oldest));
+    }
+
+    private void deleteQuietly(Path directory) {
+        try {
+            FileSystemUtils.deleteRecursively(directory);
+        } catch (IOException e) {
+            logger.warn("Could not delete spool directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,117 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import java.nio.file.Path;
+
+/**
+ * Callbacks fired by the IngestionPipeline as a document moves through its stages.
+ * Stages run on their own worker threads, so implementations must be thread safe
+ */
+public interface IngestionListener {
+
+    /**
+     * Part of the document has been read; fired as each page or section of a PDF is extracted
+     * @param documentPath the document being parsed
+     * @param bytesParsed roughly how much of the file has been read so far
+     */
+    default void onParseProgress(Path documentPath, long bytesParsed) {
+    }
+
+    /**
+     * The document has been read from disk
+     * @param documentPath the document that was parsed
+     * @param bytes size of the file that was parsed
+     */
+    default void onParsed(Path documentPath, long bytes) {
+    }
+
+    /**
+     * The document has been split into chunks
+     * @param documentPath the document that was split
+     * @param chunkCount total chunks in the document
+     * @param changedChunks chunks that still need an embedding; the rest are already stored
+     */
+    default void onSplit(Path documentPath, int chunkCount, int changedChunks) {
+    }
+
+    /**
+     * An embedding request holding some of the document's chunks has returned
+     * @param documentPath the document being embedded
+     * @param chunksEmbedded chunks of this document embedded so far
+     */
+    default void onEmbedProgress(Path documentPath, int chunksEmbedded) {
+    }
+
+    /**
+     * Embeddings have been generated for the document's chunks
+     * @param documentPath the document that was embedded
+     * @param chunkCount number of chunks embedded
+     */
+    default void onEmbedded(Path documentPath, int chunkCount) {
+    }
+
+    /**
+     * The document's chunks are in the vector store
+     * @param documentPath the document that was stored
+     * @param chunkCount number of chunks written
+     */
+    void onStored(Path documentPath, int chunkCount);
+
+    /**
+     * A stage failed and the document was dropped from the pipeline
+     * @param documentPath the document that failed
+     * @param chunkCount chunks produced before the failure; 0 if it failed before splitting
+     * @param e the cause
+     */
+    void onFailed(Path documentPath, int chunkCount, Exception e);
+
+    /**
+     * @param next notified after this listener for every callback
+     * @return a listener that notifies both
+     */
+    default IngestionListener andThen(IngestionListener next) {
+        IngestionListener first = this;
+        return new IngestionListener() {
+            @Override
+            public void onParseProgress(Path documentPath, long bytesParsed) {
+                first.onParseProgress(documentPath, bytesParsed);
+                next.onParseProgress(documentPath, bytesParsed);
+            }
+
+            @Override
+            public void onParsed(Path documentPath, long bytes) {
+                first.onParsed(documentPath, bytes);
+                next.onParsed(documentPath, bytes);
+            }
+
+            @Override
+            public void onSplit(Path documentPath, int chunkCount, int changedChunks) {
+                first.onSplit(documentPath, chunkCount, changedChunks);
+                next.onSplit(documentPath, chunkCount, changedChunks);
+            }
+
+            @Override
+            public void onEmbedProgress(Path documentPath, int chunksEmbedded) {
+                first.onEmbedProgress(documentPath, chunksEmbedded);
+                next.onEmbedProgress(documentPath, chunksEmbedded);
+            }
+
+            @Override
+            public void onEmbedded(Path documentPath, int chunkCount) {
+                first.onEmbedded(documentPath, chunkCount);
+                next.onEmbedded(documentPath, chunkCount);
+            }
+
+            @Override
+            public void onStored(Path documentPath, int chunkCount) {
+                first.onStored(documentPath, chunkCount);
+                next.onStored(documentPath, chunkCount);
+            }
+
+            @Override
+            public void onFailed(Path documentPath, int chunkCount, Exception e) {
+                first.onFailed(documentPath, chunkCount, e);
+                next.onFailed(documentPath, chunkCount, e);
+            }
+        };
+    }
+}
@@ -0,0 +1,322 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import com.daebecodin.springaimcpragstudybudydemo.embedding.EmbeddingBatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Staged ingestion pipeline: parse -> split -> embed -> store.
+ * Parsing writes the document's text to the parsed-text cache and splitting streams it back page by page.
+ * Every stage has its own pool of virtual-thread workers and hands work to the next stage
+ * through a bounded queue, so a slow stage pushes back on the ones before it instead of
+ * buffering whole documents in memory. This lets PDF parsing for one file overlap with
+ * embedding and database writes for another.
+ * Chunks are hashed after splitting and compared with what is already stored for the file,
+ * so re-indexing an edited document only embeds the chunks that actually changed.
+ * Each stage is timed as ingestion.stage; document sizes and chunk counts are recorded alongside
+ */
+@Component
+public class IngestionPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    private final DocumentParser documentParser;
+    private final TokenTextSplitter textSplitter;
+    private final EmbeddingBatcher embeddingBatcher;
+    private final VectorStoreWriter vectorStoreWriter;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary documentBytes;
+    private final Counter chunksSplit;
+    private final Counter chunksChanged;
+    private final Counter chunksEmbedded;
+    private final Counter chunksStored;
+    private final Counter chunksRemoved;
+
+    @Value("${ingestion.pipeline.parse-workers:2}")
+    private int parseWorkers;
+
+    @Value("${ingestion.pipeline.split-workers:2}")
+    private int splitWorkers;
+
+    @Value("${ingestion.pipeline.embed-workers:8}")
+    private int embedWorkers;
+
+    @Value("${ingestion.pipeline.store-workers:2}")
+    private int storeWorkers;
+
+    @Value("${ingestion.pipeline.queue-capacity:8}")
+    private int queueCapacity;
+
+    public IngestionPipeline(DocumentParser documentParser, TokenTextSplitter textSplitter,
+                             EmbeddingBatcher embeddingBatcher, VectorStoreWriter vectorStoreWriter,
+                             MeterRegistry meterRegistry) {
+        this.documentParser = documentParser;
+        this.textSplitter = textSplitter;
+        this.embeddingBatcher = embeddingBatcher;
+        this.vectorStoreWriter = vectorStoreWriter;
+        this.meterRegistry = meterRegistry;
+        this.documentBytes = DistributionSummary.builder("ingestion.document.size")
+                .baseUnit("bytes")
+                .description("Size of each parsed document")
+                .register(meterRegistry);
+        this.chunksSplit = chunkCounter("split");
+        this.chunksChanged = chunkCounter("changed");
+        this.chunksEmbedded = chunkCounter("embedded");
+        this.chunksStored = chunkCounter("stored");
+        this.chunksRemoved = chunkCounter("removed");
+    }
+
+    /**
+     * Runs the documents through every stage and blocks until the last one has been stored or has failed
+     * @param documentPaths the documents to ingest
+     * @param listener notified as each document completes a stage
+     */
+    public void run(List<Path> documentPaths, IngestionListener listener) {
+        run(documentPaths, Map.of(), listener);
+    }
+
+    /**
+     * Runs the documents through every stage and blocks until the last one has been stored or has failed
+     * @param documentPaths the documents to ingest
+     * @param contentHashes SHA-256 of documents the caller has already hashed, so the parse stage does not read them twice
+     * @param listener notified as each document completes a stage
+     */
+    public void run(List<Path> documentPaths, Map<Path, String> contentHashes, IngestionListener listener) {
+        run(documentPaths, contentHashes, documentPath -> documentPath.getFileName().toString(), listener);
+    }
+
+    /**
+     * Runs the documents through every stage and blocks until the last one has been stored or has failed
+     * @param documentPaths the documents to ingest
+     * @param contentHashes SHA-256 of documents the caller has already hashed, so the parse stage does not read them twice
+     * @param sourceFilenames the source_filename each document's chunks are stored and diffed under
+     * @param listener notified as each document completes a stage
+     */
+    public void run(List<Path> documentPaths, Map<Path, String> contentHashes, Function<Path, String> sourceFilenames,
+                    IngestionListener listener) {
+        if (documentPaths.isEmpty()) {
+            return;
+        }
+
+        BlockingQueue<Optional<Work>> parseQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Optional<Work>> splitQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Optional<Work>> embedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Optional<Work>> storeQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        try (ExecutorService parsePool = stagePool("parse");
+             ExecutorService splitPool = stagePool("split");
+             ExecutorService embedPool = stagePool("embed");
+             ExecutorService storePool = stagePool("store")) {
+
+            startStage("parse", parsePool, parseWorkers, parseQueue, splitQueue, splitWorkers, work -> parse(work, contentHashes.get(work.documentPath()), listener));
+            startStage("split", splitPool, splitWorkers, splitQueue, embedQueue, embedWorkers, work -> split(work, listener));
+            startStage("embed", embedPool, embedWorkers, embedQueue, storeQueue, storeWorkers, work -> embed(work, listener));
+            startStage("store", storePool, storeWorkers, storeQueue, null, 0, work -> store(work, listener));
+
+            try {
+                // feeding the first queue blocks once the parsers fall behind
+                for (Path documentPath : documentPaths) {
+                    parseQueue.put(Optional.of(new Work(documentPath, sourceFilenames.apply(documentPath), null, List.of(), List.of(), 0, List.of())));
+                }
+                signalEnd(parseQueue, parseWorkers);
+            } catch (InterruptedException e) {
+                // leaving the flag set makes closing the pools stop the workers instead of waiting on them
+                Thread.currentThread().interrupt();
+                logger.warn("Ingestion pipeline interrupted before all documents were queued");
+            }
+        }
+
+        logger.info("Ingestion pipeline finished {} documents", documentPaths.size());
+    }
+
+    private Work parse(Work work, String contentHash, IngestionListener listener) {
+        try {
+            // text lands in the parsed-text cache; nothing but its location is handed on
+            long size = Files.size(work.documentPath());
+            Path parsedText = documentParser.parse(work.documentPath(), contentHash,
+                    fraction -> listener.onParseProgress(work.documentPath(), Math.round(fraction * size)));
+            logger.info("Parsed {}", work.filename());
+            documentBytes.record(size);
+            listener.onParsed(work.documentPath(), size);
+            return new Work(work.documentPath(), work.filename(), parsedText, List.of(), List.of(), 0, List.of());
+        } catch (Exception e) {
+            return fail(work, 0, e, listener);
+        }
+    }
+
+    private Work split(Work work, IngestionListener listener) {
+        try {
+            // pages are read from the cache and split one at a time, so only chunks are ever held
+            List<Document> chunks = new ArrayList<>();
+            try (Stream<Document> pages = documentParser.readPages(work.parsedText())) {
+                pages.forEach(page -> chunks.addAll(textSplitter.apply(List.of(page))));
+            }
+            chunks.forEach(chunk -> {
+                // Add metadata to track a source document
+                chunk.getMetadata().put("source_filename", work.filename());
+                chunk.getMetadata().put("chunk_hash", ContentHash.of(chunk.getText()));
+            });
+
+            // only chunks whose text is not already stored for this file need an embedding
+            Map<String, Deque<UUID>> storedByHash = new HashMap<>();
+            for (VectorStoreWriter.StoredChunk stored : vectorStoreWriter.findChunks(work.filename())) {
+                storedByHash.computeIfAbsent(String.valueOf(stored.chunkHash()), hash -> new ArrayDeque<>()).add(stored.id());
+            }
+
+            List<Document> changedChunks = new ArrayList<>();
+            for (Document chunk : chunks) {
+                Deque<UUID> matches = storedByHash.get((String) chunk.getMetadata().get("chunk_hash"));
+                if (matches == null || matches.poll() == null) {
+                    changedChunks.add(chunk);
+                }
+            }
+            // whatever was not matched by a current chunk is stale
+            List<UUID> staleChunkIds = storedByHash.values().stream().flatMap(Deque::stream).toList();
+
+            logger.info("Split {} into {} chunks; {} new or changed, {} stale",
+                    work.filename(), chunks.size(), changedChunks.size(), staleChunkIds.size());
+            chunksSplit.increment(chunks.size());
+            chunksChanged.increment(changedChunks.size());
+            listener.onSplit(work.documentPath(), chunks.size(), changedChunks.size());
+            return new Work(work.documentPath(), work.filename(), work.parsedText(), changedChunks, List.of(), chunks.size(), staleChunkIds);
+        } catch (Exception e) {
+            return fail(work, 0, e, listener);
+        }
+    }
+
+    private Work embed(Work work, IngestionListener listener) {
+        try {
+            // the batcher groups these chunks with chunks from other documents in flight
+            List<float[]> embeddings = embeddingBatcher.submit(work.documents(),
+                    embedded -> listener.onEmbedProgress(work.documentPath(), embedded)).join();
+            chunksEmbedded.increment(embeddings.size());
+            listener.onEmbedded(work.documentPath(), embeddings.size());
+            return new Work(work.documentPath(), work.filename(), work.parsedText(), work.documents(), embeddings, work.chunkCount(), work.staleChunkIds());
+        } catch (Exception e) {
+            return fail(work, work.chunkCount(), e, listener);
+        }
+    }
+
+    private Work store(Work work, IngestionListener listener) {
+        try {
+            // new chunks in and stale chunks out in one transaction, so searches never see the file half re-indexed
+            int removed = vectorStoreWriter.replace(work.filename(), work.documents(), work.embeddings(), work.staleChunkIds());
+            logger.info("Successfully added {} chunks to vector store and removed {} stale chunks", work.documents().size(), removed);
+            chunksStored.increment(work.documents().size());
+            chunksRemoved.increment(removed);
+            listener.onStored(work.documentPath(), work.chunkCount());
+            return work;
+        } catch (Exception e) {
+            return fail(work, work.chunkCount(), e, listener);
+        }
+    }
+
+    private Work fail(Work work, int chunkCount, Exception e, IngestionListener listener) {
+        logger.error("Error processing document {}: {}", work.filename(), e.getMessage(), e);
+        listener.onFailed(work.documentPath(), chunkCount, e);
+        return null; // dropped; nothing is passed downstream
+    }
+
+    /**
+     * Starts the workers for one stage. Each worker takes from the input queue until it sees the end marker;
+     * the last worker to finish forwards one end marker per downstream worker.
+     * Time spent in the step is recorded per document, tagged with the stage and whether it succeeded
+     */
+    private void startStage(String stage, ExecutorService pool, int workers,
+                            BlockingQueue<Optional<Work>> input, BlockingQueue<Optional<Work>> output,
+                            int downstreamWorkers, UnaryOperator<Work> step) {
+        AtomicInteger running = new AtomicInteger(workers);
+        for (int i = 0; i < workers; i++) {
+            pool.execute(() -> {
+                try {
+                    Optional<Work> next;
+                    while ((next = input.take()).isPresent()) {
+                        long start = System.nanoTime();
+                        Work result = step.apply(next.get());
+                        Timer.builder("ingestion.stage")
+                                .tag("stage", stage)
+                                .tag("outcome", result != null ? "success" : "failure")
+                                .register(meterRegistry)
+                                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        if (result != null && output != null) {
+                            output.put(Optional.of(result));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (running.decrementAndGet() == 0 && output != null) {
+                        signalEndQuietly(output, downstreamWorkers);
+                    }
+                }
+            });
+        }
+    }
+
+    private Counter chunkCounter(String state) {
+        return Counter.builder("ingestion.chunks")
+                .description("Chunks passing through the pipeline, by what happened to them")
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+
+    private ExecutorService stagePool(String stage) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ingest-" + stage + "-", 0).factory());
+    }
+
+    private void signalEnd(BlockingQueue<Optional<Work>> queue, int workers) throws InterruptedException {
+        for (int i = 0; i < workers; i++) {
+            queue.put(Optional.empty());
+        }
+    }
+
+    private void signalEndQuietly(BlockingQueue<Optional<Work>> queue, int workers) {
+        try {
+            signalEnd(queue, workers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A document in flight; each stage fills in the next piece
+     * @param documentPath the source file
+     * @param filename the source_filename its chunks are stored under
+     * @param parsedText the document's entry in the parsed-text cache, set once parsed
+     * @param documents the new or changed chunks after splitting
+     * @param embeddings one per chunk once embedded
+     * @param chunkCount total chunks in the document, including ones already stored
+     * @param staleChunkIds stored chunks that no longer appear in the document
+     */
+    private record Work(Path documentPath, String filename, Path parsedText, List<Document> documents, List<float[]> embeddings,
+                        int chunkCount, List<UUID> staleChunkIds) {
+    }
+}
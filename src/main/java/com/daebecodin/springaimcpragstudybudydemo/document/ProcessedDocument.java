@@ -22,6 +22,14 @@ public class ProcessedDocument {
     
     @Column(name = "chunk_count")
     private Integer chunkCount;
+
+    // SHA-256 of the file's bytes
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // file modification time in epoch millis; lets unchanged files skip hashing
+    @Column(name = "last_modified")
+    private Long lastModified;
     
     // Constructors
     public ProcessedDocument() {}
@@ -73,4 +81,20 @@ public class ProcessedDocument {
     public void setChunkCount(Integer chunkCount) {
         this.chunkCount = chunkCount;
     }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Long lastModified) {
+        this.lastModified = lastModified;
+    }
 }
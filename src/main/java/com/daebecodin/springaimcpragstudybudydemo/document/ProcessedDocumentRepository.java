@@ -3,6 +3,8 @@ package com.daebecodin.springaimcpragstudybudydemo.document;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,6 +13,10 @@ public interface ProcessedDocumentRepository extends JpaRepository<ProcessedDocu
     Optional<ProcessedDocument> findByFilename(String filename);
     
     boolean existsByFilename(String filename);
+
+    List<ProcessedDocument> findByFilenameIn(Collection<String> filenames);
+
+    List<ProcessedDocument> findByContentHashIn(Collection<String> contentHashes);
     
     void deleteByFilename(String filename);
 }
@@ -0,0 +1,326 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Extracts text from uploaded documents without ever holding the whole text in memory.
+ * Tika's SAX output is written straight into the response as the content field of
+ * {"fileName": ..., "content": ..., "truncated": ...}, so memory per request stays flat however large the document is.
+ * One AutoDetectParser is shared by every request (Tika parsers are stateless and thread safe);
+ * a semaphore caps how many extractions run at once, and each is limited by upload size, extracted characters and time.
+ * The parse runs on its own virtual thread so the time limit holds even while Tika produces no text
+ */
+@Service
+public class TextExtractionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TextExtractionService.class);
+
+    private static final String TIMED_OUT = "\"truncated\":true,\"error\":\"Extraction timed out\"";
+
+    private final Parser parser = new AutoDetectParser();
+    private final ExecutorService parsers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("text-extraction-", 0).factory());
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("text-extraction-watchdog").daemon().factory());
+    private final ObjectMapper objectMapper;
+    private final Semaphore permits;
+
+    @Value("${extraction.max-size:50MB}")
+    private DataSize maxSize;
+
+    @Value("${extraction.max-characters:20000000}")
+    private int maxCharacters;
+
+    @Value("${extraction.timeout:60s}")
+    private Duration timeout;
+
+    @Value("${extraction.queue-timeout:5s}")
+    private Duration queueTimeout;
+
+    public TextExtractionService(ObjectMapper objectMapper,
+                                 @Value("${extraction.max-concurrent:4}") int maxConcurrent) {
+        this.objectMapper = objectMapper;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Checks the limits and returns a body that extracts the file while it is written to the client.
+     * The upload's stream is opened here, while the request is still active
+     * @param file the uploaded document
+     * @return the JSON response body
+     * @throws ExtractionRejectedException if the file is too large or every extraction slot stays busy for queue-timeout
+     * @throws IOException if the upload cannot be read
+     */
+    public StreamingResponseBody extractAsJson(MultipartFile file) throws ExtractionRejectedException, IOException {
+        if (file.getSize() > maxSize.toBytes()) {
+            throw new ExtractionRejectedException(ExtractionRejectedException.Reason.TOO_LARGE,
+                    file.getOriginalFilename() + " is larger than " + maxSize);
+        }
+        acquirePermit();
+
+        InputStream input;
+        try {
+            input = file.getInputStream();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        Extraction extraction = new Extraction(file.getOriginalFilename(), input);
+        // the body is not run if the client goes away before the async dispatch; the slot must not leak with it
+        extraction.abandonTimer = watchdog.schedule(extraction::abandon, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        return extraction::writeTo;
+    }
+
+    /**
+     * Runs Tika over the input, writing escaped text as it is produced
+     * @return the fields that close the JSON object; an error can no longer change the status code once streaming started
+     */
+    private String extract(String fileName, InputStream input, JsonStringWriter content) throws IOException {
+        ParseContext context = new ParseContext();
+        context.set(Parser.class, parser); // embedded documents are parsed too, like Tika.parseToString
+        BodyContentHandler handler = new BodyContentHandler(new WriteOutContentHandler(content, maxCharacters));
+
+        try {
+            parser.parse(TikaInputStream.get(input), handler, new Metadata(), context);
+            content.flush();
+            return "\"truncated\":false";
+        } catch (Exception e) {
+            content.flush();
+            if (WriteLimitReachedException.isWriteLimitReached(e)) {
+                logger.info("Extraction of {} stopped at {} characters", fileName, maxCharacters);
+                return "\"truncated\":true";
+            }
+            if (content.isStopped()) {
+                return TIMED_OUT; // the request thread has already answered
+            }
+            if (e instanceof IOException ioException && content.clientGone) {
+                throw ioException; // nothing left to write to
+            }
+            logger.error("Error extracting text from {}: {}", fileName, e.getMessage());
+            return "\"truncated\":true,\"error\":" + objectMapper.writeValueAsString("Extraction failed: " + e.getMessage());
+        }
+    }
+
+    private void acquirePermit() throws ExtractionRejectedException {
+        try {
+            if (!permits.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ExtractionRejectedException(ExtractionRejectedException.Reason.BUSY,
+                        "All extraction slots are busy");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExtractionRejectedException(ExtractionRejectedException.Reason.BUSY, "Interrupted while waiting");
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        watchdog.shutdownNow();
+        parsers.shutdownNow();
+    }
+
+    /**
+     * One extraction, from the permit taken in extractAsJson to its release.
+     * Tika runs on its own thread while the response thread waits at most the timeout for it, so a parser that is
+     * busy without producing text is still cut off. The permit is released once, when the parse really ends
+     * (a parse that ignores the interrupt keeps its slot until it next writes), or by the watchdog if the body never runs
+     */
+    private final class Extraction {
+
+        private final String fileName;
+        private final InputStream input;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile ScheduledFuture<?> abandonTimer;
+
+        Extraction(String fileName, InputStream input) {
+            this.fileName = fileName;
+            this.input = input;
+        }
+
+        void writeTo(OutputStream outputStream) throws IOException {
+            if (!started.compareAndSet(false, true)) {
+                throw new IOException("Extraction of " + fileName + " was abandoned before the response started");
+            }
+            abandonTimer.cancel(false);
+
+            Future<String> parse;
+            JsonStringWriter content;
+            Writer response = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            try {
+                response.write("{\"fileName\":" + objectMapper.writeValueAsString(fileName) + ",\"content\":\"");
+                content = new JsonStringWriter(response);
+                parse = parsers.submit(() -> {
+                    try {
+                        return extract(fileName, input, content);
+                    } finally {
+                        finish();
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                finish();
+                throw e;
+            }
+
+            String outcome = await(parse, content);
+            response.write("\"," + outcome + "}");
+            response.flush();
+        }
+
+        private String await(Future<String> parse, JsonStringWriter content) throws IOException {
+            try {
+                return parse.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                content.stop(); // nothing the parser writes from here on reaches the response
+                parse.cancel(true);
+                logger.warn("Extraction of {} timed out after {}", fileName, timeout);
+                return TIMED_OUT;
+            } catch (InterruptedException e) {
+                content.stop();
+                parse.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while extracting " + fileName);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IllegalStateException("Extraction of " + fileName + " failed", e.getCause());
+            }
+        }
+
+        void abandon() {
+            if (started.compareAndSet(false, true)) {
+                logger.warn("The response for {} never started; releasing its extraction slot", fileName);
+                finish();
+            }
+        }
+
+        private void finish() {
+            try {
+                input.close();
+            } catch (IOException e) {
+                logger.debug("Could not close the upload of {}: {}", fileName, e.getMessage());
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * Writes characters as the inside of a JSON string until stopped.
+     * Writes and stop() share a lock, so once the response thread stops it the parser can no longer touch the response
+     */
+    private static final class JsonStringWriter extends Writer {
+
+        private final Writer out;
+        private boolean stopped;
+        private volatile boolean clientGone;
+
+        JsonStringWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public synchronized void write(char[] chars, int offset, int length) throws IOException {
+            if (stopped) {
+                throw new InterruptedIOException("Extraction timed out");
+            }
+            try {
+                for (int i = offset; i < offset + length; i++) {
+                    char c = chars[i];
+                    switch (c) {
+                        case '"' -> out.write("\\\"");
+                        case '\\' -> out.write("\\\\");
+                        case '\n' -> out.write("\\n");
+                        case '\r' -> out.write("\\r");
+                        case '\t' -> out.write("\\t");
+                        default -> {
+                            if (c < 0x20) {
+                                out.write(String.format("\\u%04x", (int) c));
+                            } else {
+                                out.write(c);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                clientGone = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (!stopped) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush(); // the response itself is closed by the caller
+        }
+
+        synchronized void stop() {
+            stopped = true;
+        }
+
+        synchronized boolean isStopped() {
+            return stopped;
+        }
+    }
+
+    /**
+     * The extraction was refused before any output was written
+     */
+    public static class ExtractionRejectedException extends Exception {
+
+        public enum Reason { TOO_LARGE, BUSY }
+
+        private final Reason reason;
+
+        public ExtractionRejectedException(Reason reason, String message) {
+            super(message);
+            this.reason = reason;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.daebecodin.springaimcpragstudybudydemo.document;
+
+import com.daebecodin.springaimcpragstudybudydemo.vector.VectorStoreChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes chunks that already carry an embedding into the pgvector table.
+ * PgVectorStore.add always embeds before it inserts, so the ingestion pipeline
+ * uses this writer to keep the embed and store stages separate.
+ * The statement mirrors the upsert PgVectorStore runs, so both paths produce the same rows.
+ * Also looks up and removes the chunks stored for a source file so re-indexing can work chunk by chunk.
+ * Change events are published after commit when called inside a transaction, so caches never reload rows
+ * that are about to be rolled back or replaced
+ */
+@Component
+public class VectorStoreWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorStoreWriter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${spring.ai.vectorstore.pgvector.schema-name:public}")
+    private String schemaName;
+
+    @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}")
+    private String tableName;
+
+    public VectorStoreWriter(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher,
+                             PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Writes a document's new chunks and deletes its stale ones in one transaction,
+     * so concurrent searches see either the old version of the document or the new one, never a mix.
+     * One change event names the document, even when an edit only removed text and there are no new chunks
+     * @param sourceFilename the document being replaced
+     * @param chunks the new or changed chunks
+     * @param embeddings one embedding per chunk, in the same order
+     * @param staleChunkIds chunks to remove once the new ones are in
+     * @return stale rows deleted
+     */
+    public int replace(String sourceFilename, List<Document> chunks, List<float[]> embeddings, Collection<UUID> staleChunkIds) {
+        Integer removed = transactionTemplate.execute(status -> {
+            insert(chunks, embeddings);
+            int deleted = deleteRows(staleChunkIds);
+            if (!chunks.isEmpty() || deleted > 0) {
+                publishChange(sourceFilename);
+            }
+            return deleted;
+        });
+        return removed == null ? 0 : removed;
+    }
+
+    /**
+     * Batch inserts the chunks with their embeddings
+     * @param chunks the chunks to store
+     * @param embeddings one embedding per chunk, in the same order
+     */
+    public void write(List<Document> chunks, List<float[]> embeddings) {
+        insert(chunks, embeddings);
+        if (!chunks.isEmpty()) {
+            publishChange((String) chunks.getFirst().getMetadata().get("source_filename"));
+        }
+    }
+
+    private void insert(List<Document> chunks, List<float[]> embeddings) {
+        if (chunks.size() != embeddings.size()) {
+            throw new IllegalArgumentException("Expected " + chunks.size() + " embeddings but got " + embeddings.size());
+        }
+        if (chunks.isEmpty()) {
+            return;
+        }
+
+        String sql = "INSERT INTO " + table() + " (id, content, metadata, embedding) "
+                + "VALUES (?, ?, ?::jsonb, ?) "
+                + "ON CONFLICT (id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding";
+
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Document chunk = chunks.get(i);
+                ps.setObject(1, UUID.fromString(chunk.getId()));
+                ps.setString(2, chunk.getText());
+                ps.setString(3, toJson(chunk));
+                ps.setObject(4, new PGvector(embeddings.get(i)));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return chunks.size();
+            }
+        });
+
+        logger.debug("Wrote {} chunks to {}", chunks.size(), table());
+    }
+
+    /**
+     * Lists the chunks currently stored for a source document
+     * @param sourceFilename the source_filename metadata value
+     * @return stored chunk ids with their chunk_hash; the hash is null for chunks written before hashing was added
+     */
+    public List<StoredChunk> findChunks(String sourceFilename) {
+        return jdbcTemplate.query(
+                "SELECT id, metadata->>'chunk_hash' AS chunk_hash FROM " + table() + " WHERE metadata->>'source_filename' = ?",
+                (rs, rowNum) -> new StoredChunk(rs.getObject("id", UUID.class), rs.getString("chunk_hash")),
+                sourceFilename);
+    }
+
+    /**
+     * Deletes chunks by id in one statement
+     * @param sourceFilename the document the chunks belonged to, if known; passed on in the change event
+     * @param ids the chunk ids to delete
+     * @return rows deleted
+     */
+    public int delete(String sourceFilename, Collection<UUID> ids) {
+        int deleted = deleteRows(ids);
+        if (deleted > 0) {
+            publishChange(sourceFilename);
+        }
+        return deleted;
+    }
+
+    private int deleteRows(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("DELETE FROM " + table() + " WHERE id = ANY (?)");
+            ps.setArray(1, connection.createArrayOf("uuid", ids.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Deletes every chunk stored for a source document in one statement; served by the source_filename expression index
+     * @param sourceFilename the source_filename metadata value
+     * @return rows deleted
+     */
+    public int deleteBySource(String sourceFilename) {
+        int deleted = jdbcTemplate.update("DELETE FROM " + table() + " WHERE metadata->>'source_filename' = ?", sourceFilename);
+        publishChange(sourceFilename);
+        return deleted;
+    }
+
+    /**
+     * Points every chunk of a renamed file at its new name without re-embedding anything
+     * @param oldFilename the source_filename the chunks were stored under
+     * @param newFilename the file's new name
+     * @return rows updated
+     */
+    public int relabelSource(String oldFilename, String newFilename) {
+        int updated = jdbcTemplate.update(
+                "UPDATE " + table() + " SET metadata = jsonb_set(metadata::jsonb, '{source_filename}', to_jsonb(?::text))::json "
+                        + "WHERE metadata->>'source_filename' = ?",
+                newFilename, oldFilename);
+        publishChange(newFilename);
+        return updated;
+    }
+
+    // lets search result caches know their entries may be stale
+    private void publishChange(String sourceFilename) {
+        VectorStoreChangedEvent event = new VectorStoreChangedEvent(this, sourceFilename);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eventPublisher.publishEvent(event);
+            return;
+        }
+        // a cache cleared before commit could be refilled with the old rows
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                eventPublisher.publishEvent(event);
+            }
+        });
+    }
+
+    private String table() {
+        return schemaName + "." + tableName;
+    }
+
+    private String toJson(Document chunk) {
+        try {
+            return objectMapper.writeValueAsString(chunk.getMetadata());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize metadata for chunk " + chunk.getId(), e);
+        }
+    }
+
+    /**
+     * A chunk row already in the vector table
+     * @param id the row id
+     * @param chunkHash SHA-256 of the chunk text, or null if it predates chunk hashing
+     */
+    public record StoredChunk(UUID id, String chunkHash) {
+    }
+}
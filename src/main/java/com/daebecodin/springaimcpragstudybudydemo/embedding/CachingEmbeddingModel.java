@@ -0,0 +1,225 @@
+package com.daebecodin.springaimcpragstudybudydemo.embedding;
+
+import com.daebecodin.springaimcpragstudybudydemo.document.ContentHash;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.dao.DataAccessException;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * EmbeddingModel decorator that remembers every embedding it has produced.
+ * Texts are normalized and hashed; the key is the model id plus that hash.
+ * Lookups go to an in-heap LRU first, then to the embedding_cache table, and only the
+ * remaining texts are sent to the real model. Rebuilding the vector table from the same
+ * corpus therefore makes no embedding calls at all.
+ * Requests are timed as embedding.requests; single texts are query embeddings, larger requests are ingestion batches
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingModel.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCacheRepository cacheRepository;
+    private final String modelId;
+    private final Map<String, float[]> memoryCache;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong persistentHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param delegate the model that actually computes embeddings
+     * @param cacheRepository the persistent tier
+     * @param modelId identifies the delegate's model so vectors from different models never mix
+     * @param maxMemoryEntries size of the in-heap LRU tier
+     * @param meterRegistry receives request timings and cache hit counts
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCacheRepository cacheRepository,
+                                 String modelId, int maxMemoryEntries, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.cacheRepository = cacheRepository;
+        this.modelId = modelId;
+        this.memoryCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+        this.meterRegistry = meterRegistry;
+        registerCacheMeters(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        long start = System.nanoTime();
+        List<String> texts = request.getInstructions();
+        List<String> keys = texts.stream().map(CachingEmbeddingModel::key).toList();
+        Map<String, float[]> resolved = new HashMap<>();
+
+        // in-heap tier
+        synchronized (memoryCache) {
+            for (String key : keys) {
+                float[] cached = memoryCache.get(key);
+                if (cached != null) {
+                    resolved.put(key, cached);
+                }
+            }
+        }
+        memoryHits.addAndGet(countResolved(keys, resolved));
+
+        // persistent tier
+        Set<String> missing = missingKeys(keys, resolved);
+        if (!missing.isEmpty()) {
+            Map<String, float[]> stored = findPersisted(missing);
+            resolved.putAll(stored);
+            remember(stored);
+            persistentHits.addAndGet(stored.size());
+        }
+
+        // whatever is left goes to the model, each distinct text once
+        missing = missingKeys(keys, resolved);
+        boolean modelCalled = !missing.isEmpty();
+        if (modelCalled) {
+            List<String> missingTexts = new ArrayList<>();
+            List<String> uncachedKeys = new ArrayList<>();
+            for (int i = 0; i < texts.size(); i++) {
+                if (missing.remove(keys.get(i))) {
+                    missingTexts.add(texts.get(i));
+                    uncachedKeys.add(keys.get(i));
+                }
+            }
+
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missingTexts, request.getOptions()));
+            Map<String, float[]> computed = new HashMap<>();
+            for (int i = 0; i < uncachedKeys.size(); i++) {
+                computed.put(uncachedKeys.get(i), response.getResults().get(i).getOutput());
+            }
+            misses.addAndGet(computed.size());
+            resolved.putAll(computed);
+            remember(computed);
+            persist(computed);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            embeddings.add(new Embedding(resolved.get(keys.get(i)), i));
+        }
+        Timer.builder("embedding.requests")
+                .tag("kind", texts.size() == 1 ? "query" : "batch")
+                .tag("model.called", String.valueOf(modelCalled))
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * @return hit and miss counts since startup
+     */
+    public CacheStats getStats() {
+        int memoryEntries;
+        synchronized (memoryCache) {
+            memoryEntries = memoryCache.size();
+        }
+        return new CacheStats(memoryHits.get(), persistentHits.get(), misses.get(), memoryEntries);
+    }
+
+    private void registerCacheMeters(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("embedding.cache.texts", memoryHits, AtomicLong::get)
+                .description("Texts resolved by each tier of the embedding cache")
+                .tag("tier", "memory").register(meterRegistry);
+        FunctionCounter.builder("embedding.cache.texts", persistentHits, AtomicLong::get)
+                .tag("tier", "database").register(meterRegistry);
+        FunctionCounter.builder("embedding.cache.texts", misses, AtomicLong::get)
+                .tag("tier", "model").register(meterRegistry);
+        Gauge.builder("embedding.cache.memory.entries", this, model -> model.getStats().memoryEntries())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Same text modulo whitespace and Unicode form gives the same key
+     */
+    private static String key(String text) {
+        String normalized = text == null ? "" : WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").strip();
+        return ContentHash.of(normalized);
+    }
+
+    private Map<String, float[]> findPersisted(Set<String> keys) {
+        try {
+            return cacheRepository.findAll(modelId, keys);
+        } catch (DataAccessException e) {
+            // the cache is an optimization; fall through to the model
+            logger.warn("Embedding cache lookup failed: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void persist(Map<String, float[]> embeddings) {
+        try {
+            cacheRepository.saveAll(modelId, embeddings);
+        } catch (DataAccessException e) {
+            logger.warn("Could not store {} embeddings in the cache: {}", embeddings.size(), e.getMessage());
+        }
+    }
+
+    private void remember(Map<String, float[]> embeddings) {
+        synchronized (memoryCache) {
+            memoryCache.putAll(embeddings);
+        }
+    }
+
+    private static Set<String> missingKeys(List<String> keys, Map<String, float[]> resolved) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String key : keys) {
+            if (!resolved.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        return missing;
+    }
+
+    private static long countResolved(List<String> keys, Map<String, float[]> resolved) {
+        return keys.stream().filter(resolved::containsKey).count();
+    }
+
+    /**
+     * @param memoryHits texts served from the in-heap tier
+     * @param persistentHits texts served from the embedding_cache table
+     * @param misses texts sent to the embedding model
+     * @param memoryEntries entries currently held in heap
+     */
+    public record CacheStats(long memoryHits, long persistentHits, long misses, int memoryEntries) {
+    }
+}
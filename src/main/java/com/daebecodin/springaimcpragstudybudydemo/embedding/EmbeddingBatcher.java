@@ -0,0 +1,251 @@
+package com.daebecodin.springaimcpragstudybudydemo.embedding;
+
+import com.daebecodin.springaimcpragstudybudydemo.provider.BulkheadFullException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Collects chunks from many documents into shared embedding requests.
+ * A small document no longer costs a round-trip of its own and a large one is cut into
+ * requests the provider accepts. A batch is sent as soon as it is full (by chunk count or
+ * token budget, see EmbeddingBatchingStrategy) or once its oldest chunk has waited max-wait-ms.
+ * Ingestion runs in the background, so a batch the embedding bulkhead turns away waits for its Retry-After and is sent
+ * again, for up to busy-timeout, instead of failing every document in it
+ */
+@Component
+public class EmbeddingBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingBatcher.class);
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingBatchingStrategy batchingStrategy;
+
+    private final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("embedding-batch-timer").daemon().factory());
+    private final ExecutorService requestExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("embedding-batch-", 0).factory());
+    private final Semaphore inFlightRequests;
+
+    private final Object lock = new Object();
+    private List<PendingChunk> buffer = new ArrayList<>();
+    private int bufferedTokens;
+    private long generation; // bumped every time the buffer is handed off
+
+    @Value("${embedding.batch.max-wait-ms:50}")
+    private long maxWaitMs;
+
+    @Value("${embedding.batch.busy-timeout:10m}")
+    private Duration busyTimeout;
+
+    public EmbeddingBatcher(EmbeddingModel embeddingModel, EmbeddingBatchingStrategy batchingStrategy,
+                            @Value("${embedding.batch.max-concurrent-requests:4}") int maxConcurrentRequests) {
+        this.embeddingModel = embeddingModel;
+        this.batchingStrategy = batchingStrategy;
+        this.inFlightRequests = new Semaphore(maxConcurrentRequests);
+    }
+
+    /**
+     * Queues a document's chunks for embedding
+     * @param chunks the chunks to embed
+     * @return completes with one embedding per chunk, in the same order, once every batch holding them has returned
+     */
+    public CompletableFuture<List<float[]>> submit(List<Document> chunks) {
+        return submit(chunks, embedded -> {
+        });
+    }
+
+    /**
+     * Queues a document's chunks for embedding and reports as each batch holding some of them returns
+     * @param chunks the chunks to embed
+     * @param progress told how many of these chunks have been embedded so far, once per returned batch; never goes backwards
+     * @return completes with one embedding per chunk, in the same order, once every batch holding them has returned
+     */
+    public CompletableFuture<List<float[]>> submit(List<Document> chunks, IntConsumer progress) {
+        Submission submission = new Submission(chunks.size(), progress);
+        if (chunks.isEmpty()) {
+            submission.result.complete(List.of());
+            return submission.result;
+        }
+
+        List<List<PendingChunk>> ready = new ArrayList<>();
+        synchronized (lock) {
+            for (int i = 0; i < chunks.size(); i++) {
+                Document chunk = chunks.get(i);
+                int tokens = batchingStrategy.estimateTokens(chunk);
+
+                if (!buffer.isEmpty() && !batchingStrategy.fits(buffer.size() + 1, bufferedTokens + tokens)) {
+                    ready.add(takeBuffer());
+                }
+                if (buffer.isEmpty()) {
+                    scheduleFlush(generation);
+                }
+
+                buffer.add(new PendingChunk(chunk, submission, i));
+                bufferedTokens += tokens;
+
+                if (buffer.size() >= batchingStrategy.getMaxChunks()) {
+                    ready.add(takeBuffer());
+                }
+            }
+        }
+
+        ready.forEach(this::dispatch);
+        return submission.result;
+    }
+
+    /**
+     * Sends whatever is buffered right away
+     */
+    public void flush() {
+        List<PendingChunk> batch;
+        synchronized (lock) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            batch = takeBuffer();
+        }
+        dispatch(batch);
+    }
+
+    private void scheduleFlush(long expectedGeneration) {
+        flushTimer.schedule(() -> {
+            List<PendingChunk> batch = null;
+            synchronized (lock) {
+                // only flush if this is still the buffer the timer was started for
+                if (generation == expectedGeneration && !buffer.isEmpty()) {
+                    batch = takeBuffer();
+                }
+            }
+            if (batch != null) {
+                dispatch(batch);
+            }
+        }, maxWaitMs, TimeUnit.MILLISECONDS);
+    }
+
+    // callers must hold the lock
+    private List<PendingChunk> takeBuffer() {
+        List<PendingChunk> batch = buffer;
+        buffer = new ArrayList<>();
+        bufferedTokens = 0;
+        generation++;
+        return batch;
+    }
+
+    private void dispatch(List<PendingChunk> batch) {
+        requestExecutor.execute(() -> {
+            try {
+                inFlightRequests.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.submission().fail(e));
+                return;
+            }
+            try {
+                List<String> texts = batch.stream().map(pending -> pending.chunk().getText()).toList();
+                EmbeddingResponse response = callWhenFree(new EmbeddingRequest(texts, EmbeddingOptionsBuilder.builder().build()));
+                logger.debug("Embedded batch of {} chunks", texts.size());
+
+                Map<Submission, Integer> embeddedPerSubmission = new LinkedHashMap<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingChunk pending = batch.get(i);
+                    pending.submission().set(pending.index(), response.getResults().get(i).getOutput());
+                    embeddedPerSubmission.merge(pending.submission(), 1, Integer::sum);
+                }
+                embeddedPerSubmission.forEach(Submission::embedded);
+            } catch (Exception e) {
+                logger.error("Embedding batch of {} chunks failed: {}", batch.size(), e.getMessage());
+                batch.forEach(pending -> pending.submission().fail(e));
+            } finally {
+                inFlightRequests.release();
+            }
+        });
+    }
+
+    /**
+     * Sends the request, waiting out a full embedding bulkhead; query embeddings from live requests keep priority
+     * @throws BulkheadFullException once the bulkhead has stayed full for busy-timeout
+     */
+    private EmbeddingResponse callWhenFree(EmbeddingRequest request) throws InterruptedException {
+        long deadline = System.nanoTime() + busyTimeout.toNanos();
+        while (true) {
+            try {
+                return embeddingModel.call(request);
+            } catch (BulkheadFullException e) {
+                Duration retryAfter = e.getRetryAfter();
+                if (System.nanoTime() + retryAfter.toNanos() > deadline) {
+                    throw e;
+                }
+                logger.debug("Embedding bulkhead full, retrying a batch of {} chunks in {}", request.getInstructions().size(), retryAfter);
+                Thread.sleep(retryAfter);
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+        flushTimer.shutdown();
+        requestExecutor.close();
+    }
+
+    private record PendingChunk(Document chunk, Submission submission, int index) {
+    }
+
+    /**
+     * Collects embeddings for one caller; completes when every chunk has one.
+     * Batches return on different threads; counting under the lock keeps progress in order and ahead of completion
+     */
+    private static final class Submission {
+        private final float[][] embeddings;
+        private final IntConsumer progress;
+        private final CompletableFuture<List<float[]>> result = new CompletableFuture<>();
+        private int remaining;
+
+        Submission(int size, IntConsumer progress) {
+            this.embeddings = new float[size][];
+            this.progress = progress;
+            this.remaining = size;
+        }
+
+        void set(int index, float[] embedding) {
+            embeddings[index] = embedding;
+        }
+
+        /**
+         * A batch holding count of this caller's chunks has returned and their embeddings are set
+         */
+        synchronized void embedded(int count) {
+            remaining -= count;
+            progress.accept(embeddings.length - remaining);
+            if (remaining == 0) {
+                result.complete(Arrays.asList(embeddings));
+            }
+        }
+
+        void fail(Exception e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
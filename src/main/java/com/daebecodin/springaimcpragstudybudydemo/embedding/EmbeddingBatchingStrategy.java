@@ -0,0 +1,89 @@
+package com.daebecodin.springaimcpragstudybudydemo.embedding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts a list of chunks into embedding requests the provider will accept.
+ * A request closes when it reaches the provider's per-request text limit or the token budget,
+ * whichever comes first. Used by PgVectorStore for direct adds and by the EmbeddingBatcher
+ * when it groups chunks from several documents
+ */
+@Component
+public class EmbeddingBatchingStrategy implements BatchingStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingBatchingStrategy.class);
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    // Cohere on Bedrock accepts at most 96 texts per request
+    @Value("${embedding.batch.max-chunks:96}")
+    private int maxChunks;
+
+    @Value("${embedding.batch.max-request-tokens:40000}")
+    private int maxRequestTokens;
+
+    // anything longer than this is truncated by the model
+    @Value("${spring.ai.bedrock.cohere.embedding.options.max-input-tokens:512}")
+    private int maxInputTokens;
+
+    @Override
+    public List<List<Document>> batch(List<Document> documents) {
+        List<List<Document>> batches = new ArrayList<>();
+        List<Document> current = new ArrayList<>();
+        int currentTokens = 0;
+
+        for (Document document : documents) {
+            int tokens = estimateTokens(document);
+            if (!current.isEmpty() && !fits(current.size() + 1, currentTokens + tokens)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(document);
+            currentTokens += tokens;
+        }
+
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    /**
+     * Estimates the tokens a chunk will cost, capped at what the model will actually read
+     * @param document the chunk to measure
+     * @return the estimated token count
+     */
+    public int estimateTokens(Document document) {
+        String text = document.getText();
+        int tokens = text == null ? 0 : tokenCountEstimator.estimate(text);
+        if (tokens > maxInputTokens) {
+            logger.debug("Chunk {} has ~{} tokens; the model truncates at {}", document.getId(), tokens, maxInputTokens);
+            return maxInputTokens;
+        }
+        return tokens;
+    }
+
+    /**
+     * @param chunkCount texts in the request
+     * @param tokenCount estimated tokens in the request
+     * @return whether a request of this size is within the provider's limits
+     */
+    public boolean fits(int chunkCount, int tokenCount) {
+        return chunkCount <= maxChunks && tokenCount <= maxRequestTokens;
+    }
+
+    public int getMaxChunks() {
+        return maxChunks;
+    }
+}
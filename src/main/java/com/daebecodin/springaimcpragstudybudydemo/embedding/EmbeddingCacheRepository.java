@@ -0,0 +1,81 @@
+package com.daebecodin.springaimcpragstudybudydemo.embedding;
+
+import com.pgvector.PGvector;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent tier of the embedding cache; the embedding_cache table is created by DatabaseInitializer
+ */
+@Repository
+@DependsOn("databaseInitializer")
+public class EmbeddingCacheRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EmbeddingCacheRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Looks up many cached embeddings in one query
+     * @param modelId the embedding model the vectors were produced by
+     * @param textHashes hashes of the normalized texts
+     * @return the embeddings found, keyed by text hash
+     */
+    public Map<String, float[]> findAll(String modelId, Collection<String> textHashes) {
+        Map<String, float[]> found = new HashMap<>();
+        if (textHashes.isEmpty()) {
+            return found;
+        }
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT text_hash, embedding::text AS embedding FROM embedding_cache WHERE model_id = ? AND text_hash = ANY (?)");
+            ps.setString(1, modelId);
+            ps.setArray(2, connection.createArrayOf("varchar", textHashes.toArray()));
+            return ps;
+        }, rs -> {
+            found.put(rs.getString("text_hash"), new PGvector(rs.getString("embedding")).toArray());
+        });
+        return found;
+    }
+
+    /**
+     * Stores new embeddings; rows another node already wrote are left alone
+     * @param modelId the embedding model the vectors were produced by
+     * @param embeddings embeddings keyed by text hash
+     */
+    public void saveAll(String modelId, Map<String, float[]> embeddings) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<String, float[]>> rows = new ArrayList<>(embeddings.entrySet());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO embedding_cache (model_id, text_hash, embedding) VALUES (?, ?, ?) ON CONFLICT DO NOTHING",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setString(1, modelId);
+                        ps.setString(2, rows.get(i).getKey());
+                        ps.setObject(3, new PGvector(rows.get(i).getValue()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                });
+    }
+}
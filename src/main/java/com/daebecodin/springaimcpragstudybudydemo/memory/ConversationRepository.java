@@ -0,0 +1,102 @@
+package com.daebecodin.springaimcpragstudybudydemo.memory;
+
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent tier of the chat memory; the chat_memory table is created by DatabaseInitializer
+ */
+@Repository
+@DependsOn("databaseInitializer")
+public class ConversationRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ConversationRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param conversationId the conversation
+     * @return its stored messages, oldest first
+     */
+    public List<StoredMessage> findAll(String conversationId) {
+        return jdbcTemplate.query(
+                "SELECT seq, message_type, content FROM chat_memory WHERE conversation_id = ? ORDER BY seq",
+                (rs, rowNum) -> new StoredMessage(conversationId, rs.getLong("seq"), rs.getString("message_type"), rs.getString("content")),
+                conversationId);
+    }
+
+    /**
+     * Appends messages in one batch; rows already written are left alone, so a retried flush is harmless
+     */
+    public void saveAll(List<StoredMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO chat_memory (conversation_id, seq, message_type, content) VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        StoredMessage message = messages.get(i);
+                        ps.setString(1, message.conversationId());
+                        ps.setLong(2, message.seq());
+                        ps.setString(3, message.messageType());
+                        ps.setString(4, message.content());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return messages.size();
+                    }
+                });
+    }
+
+    /**
+     * Drops messages that have slid out of each conversation's window
+     * @param firstKeptSeq per conversation, the oldest sequence number still in the window
+     */
+    public void trim(Map<String, Long> firstKeptSeq) {
+        if (firstKeptSeq.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<String, Long>> rows = List.copyOf(firstKeptSeq.entrySet());
+        jdbcTemplate.batchUpdate("DELETE FROM chat_memory WHERE conversation_id = ? AND seq < ?",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setString(1, rows.get(i).getKey());
+                        ps.setLong(2, rows.get(i).getValue());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                });
+    }
+
+    public void delete(String conversationId) {
+        jdbcTemplate.update("DELETE FROM chat_memory WHERE conversation_id = ?", conversationId);
+    }
+
+    /**
+     * One row of chat_memory
+     * @param conversationId the conversation
+     * @param seq position in the conversation
+     * @param messageType USER, ASSISTANT or SYSTEM
+     * @param content the message text
+     */
+    public record StoredMessage(String conversationId, long seq, String messageType, String content) {
+    }
+}
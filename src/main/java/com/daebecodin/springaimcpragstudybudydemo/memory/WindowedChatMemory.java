@@ -0,0 +1,350 @@
+package com.daebecodin.springaimcpragstudybudydemo.memory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversation memory kept apart from the RAG corpus.
+ * Each conversation is a sliding window of its most recent messages, at most max-tokens long.
+ * Reads and writes go to an in-heap hot tier; the chat_memory table is written behind by a background
+ * thread in batches, so a chat turn costs no embedding call and no synchronous database write.
+ * Conversations that have been idle for idle-timeout leave the heap and are reloaded from the table on next use.
+ * One that leaves the hot tier, by size or idleness, while it still has writes queued is pinned until they are written,
+ * and is served from the pin instead: the table doesn't have those messages yet, and reloading without them would
+ * reuse their sequence numbers. Rows that slide out of a window are deleted, so the table stays bounded too
+ */
+@Component
+public class WindowedChatMemory implements ChatMemory {
+
+    private static final Logger logger = LoggerFactory.getLogger(WindowedChatMemory.class);
+
+    private final ConversationRepository repository;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final Cache<String, Conversation> conversations;
+    // evicted conversations whose queued writes have not been written yet
+    private final Map<String, Conversation> unflushed = new ConcurrentHashMap<>();
+    private final BlockingQueue<Write> writes;
+    private final int maxTokens;
+    private final int flushBatchSize;
+    private final Duration flushInterval;
+    private Thread writer;
+    private volatile boolean running = true;
+
+    public WindowedChatMemory(ConversationRepository repository, MeterRegistry meterRegistry,
+                              @Value("${chat.memory.max-tokens:2000}") int maxTokens,
+                              @Value("${chat.memory.max-conversations:10000}") long maxConversations,
+                              @Value("${chat.memory.idle-timeout:2h}") Duration idleTimeout,
+                              @Value("${chat.memory.flush-interval:500ms}") Duration flushInterval,
+                              @Value("${chat.memory.flush-batch-size:500}") int flushBatchSize,
+                              @Value("${chat.memory.write-queue-capacity:10000}") int writeQueueCapacity) {
+        this.repository = repository;
+        this.maxTokens = maxTokens;
+        this.flushInterval = flushInterval;
+        this.flushBatchSize = flushBatchSize;
+        this.conversations = Caffeine.newBuilder()
+                .maximumSize(maxConversations)
+                .expireAfterAccess(idleTimeout)
+                .evictionListener(this::evicted) // runs inside the eviction, so no load of the same id can interleave
+                .build();
+        this.writes = new LinkedBlockingQueue<>(writeQueueCapacity);
+        Gauge.builder("chat.memory.conversations", conversations, Cache::estimatedSize).register(meterRegistry);
+        Gauge.builder("chat.memory.pending-writes", writes, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void startWriter() {
+        writer = Thread.ofVirtual().name("chat-memory-writer").start(this::writeBehind);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        List<Write> pending = new ArrayList<>();
+        while (pending.isEmpty()) {
+            Conversation conversation = conversation(conversationId);
+            synchronized (conversation) {
+                if (conversation.detached()) {
+                    continue; // evicted after we looked it up; the next lookup reloads it
+                }
+                for (Message message : messages) {
+                    if (message.getMessageType() == MessageType.TOOL || message.getText() == null) {
+                        continue; // tool calls are not part of what the student and the model said
+                    }
+                    long seq = conversation.append(message, tokenCountEstimator.estimate(message.getText()));
+                    pending.add(new Insert(conversation, new ConversationRepository.StoredMessage(
+                            conversationId, seq, message.getMessageType().name(), message.getText())));
+                }
+                conversation.trimTo(maxTokens);
+                pending.add(new Trim(conversation, conversation.firstSeq()));
+                conversation.pendingWrites += pending.size();
+            }
+        }
+        pending.forEach(this::enqueue);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Conversation conversation = conversation(conversationId);
+        synchronized (conversation) {
+            return conversation.messages();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        while (true) {
+            Conversation conversation = conversation(conversationId);
+            synchronized (conversation) {
+                if (conversation.detached()) {
+                    continue;
+                }
+                // emptied in place and kept pinned like any other write, so nothing is reloaded before the delete has run
+                conversation.clear();
+                conversation.pendingWrites++;
+            }
+            enqueue(new Clear(conversation));
+            return;
+        }
+    }
+
+    private Conversation conversation(String conversationId) {
+        return conversations.get(conversationId, this::load);
+    }
+
+    /**
+     * Pins a conversation that leaves the hot tier with writes still queued
+     */
+    private void evicted(String conversationId, Conversation conversation, RemovalCause cause) {
+        synchronized (conversation) {
+            conversation.hot = false;
+            if (conversation.pendingWrites > 0) {
+                unflushed.put(conversationId, conversation);
+            }
+        }
+    }
+
+    private Conversation load(String conversationId) {
+        Conversation pinned = unflushed.get(conversationId);
+        if (pinned != null) {
+            synchronized (pinned) {
+                pinned.hot = true;
+            }
+            return pinned;
+        }
+
+        List<ConversationRepository.StoredMessage> stored;
+        try {
+            stored = repository.findAll(conversationId);
+        } catch (DataAccessException e) {
+            logger.warn("Could not load conversation {}; starting it empty: {}", conversationId, e.getMessage());
+            stored = List.of();
+        }
+        Conversation conversation = new Conversation(conversationId, stored.isEmpty() ? 0 : stored.getLast().seq() + 1);
+        for (ConversationRepository.StoredMessage message : stored) {
+            Message restored = switch (message.messageType()) {
+                case "USER" -> new UserMessage(message.content());
+                case "ASSISTANT" -> new AssistantMessage(message.content());
+                default -> new SystemMessage(message.content());
+            };
+            conversation.restore(message.seq(), restored, tokenCountEstimator.estimate(message.content()));
+        }
+        conversation.trimTo(maxTokens);
+        return conversation;
+    }
+
+    private void enqueue(Write write) {
+        try {
+            writes.put(write); // blocks only when the writer is far behind
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted; dropped a chat memory write for {}", write.conversation().id);
+            written(List.of(write));
+        }
+    }
+
+    /**
+     * Counts writes as done, whether they succeeded or not, and unpins conversations that have none left
+     */
+    private void written(List<Write> batch) {
+        Map<Conversation, Integer> done = new HashMap<>();
+        batch.forEach(write -> done.merge(write.conversation(), 1, Integer::sum));
+        done.forEach((conversation, count) -> {
+            synchronized (conversation) {
+                conversation.pendingWrites -= count;
+                if (conversation.pendingWrites == 0) {
+                    unflushed.remove(conversation.id, conversation);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writer loop: waits for the first write, gives others flush-interval to pile up, then writes them together
+     */
+    private void writeBehind() {
+        List<Write> batch = new ArrayList<>();
+        while (running || !writes.isEmpty()) {
+            try {
+                Write first = writes.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                Thread.sleep(flushInterval);
+                writes.drainTo(batch, flushBatchSize - 1);
+            } catch (InterruptedException e) {
+                writes.drainTo(batch); // shutting down; write what is left
+                running = false;
+            }
+            flush(batch);
+            written(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes a batch in queue order; inserts and trims are grouped, a clear splits the groups
+     */
+    private void flush(List<Write> batch) {
+        List<ConversationRepository.StoredMessage> inserts = new ArrayList<>();
+        Map<String, Long> trims = new LinkedHashMap<>();
+        try {
+            for (Write write : batch) {
+                switch (write) {
+                    case Insert insert -> inserts.add(insert.message());
+                    case Trim trim -> trims.merge(trim.conversation().id, trim.firstKeptSeq(), Math::max);
+                    case Clear clear -> {
+                        persist(inserts, trims);
+                        repository.delete(clear.conversation().id);
+                    }
+                }
+            }
+            persist(inserts, trims);
+        } catch (DataAccessException e) {
+            // the heap window still has these messages, but a reload after eviction or a restart won't
+            logger.warn("Could not write {} chat memory changes: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void persist(List<ConversationRepository.StoredMessage> inserts, Map<String, Long> trims) {
+        repository.saveAll(inserts);
+        repository.trim(trims);
+        inserts.clear();
+        trims.clear();
+    }
+
+    @PreDestroy
+    void stopWriter() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(Duration.ofSeconds(10));
+    }
+
+    /**
+     * One conversation's window; guarded by synchronizing on the instance
+     */
+    private static final class Conversation {
+
+        private final String id;
+        private final Deque<Entry> entries = new ArrayDeque<>();
+        private int tokens;
+        private long nextSeq;
+        // queued writes not yet written; while above zero the conversation is hot or pinned
+        private int pendingWrites;
+        private boolean hot = true;
+
+        Conversation(String id, long nextSeq) {
+            this.id = id;
+            this.nextSeq = nextSeq;
+        }
+
+        /**
+         * @return whether the conversation was evicted with nothing pending, so a lookup would no longer find it
+         */
+        boolean detached() {
+            return !hot && pendingWrites == 0;
+        }
+
+        long append(Message message, int messageTokens) {
+            long seq = nextSeq++;
+            restore(seq, message, messageTokens);
+            return seq;
+        }
+
+        void restore(long seq, Message message, int messageTokens) {
+            entries.addLast(new Entry(seq, message, messageTokens));
+            tokens += messageTokens;
+        }
+
+        /**
+         * Drops the oldest messages until the window fits; the newest message is always kept
+         */
+        void trimTo(int maxTokens) {
+            while (tokens > maxTokens && entries.size() > 1) {
+                tokens -= entries.removeFirst().tokens();
+            }
+        }
+
+        /**
+         * Empties the window; sequence numbers carry on, so rows still queued from before stay older than new ones
+         */
+        void clear() {
+            entries.clear();
+            tokens = 0;
+        }
+
+        long firstSeq() {
+            return entries.isEmpty() ? nextSeq : entries.getFirst().seq();
+        }
+
+        List<Message> messages() {
+            return entries.stream().map(Entry::message).toList();
+        }
+    }
+
+    private record Entry(long seq, Message message, int tokens) {
+    }
+
+    private sealed interface Write permits Insert, Trim, Clear {
+        Conversation conversation();
+    }
+
+    private record Insert(Conversation conversation, ConversationRepository.StoredMessage message) implements Write {
+    }
+
+    private record Trim(Conversation conversation, long firstKeptSeq) implements Write {
+    }
+
+    private record Clear(Conversation conversation) implements Write {
+    }
+}
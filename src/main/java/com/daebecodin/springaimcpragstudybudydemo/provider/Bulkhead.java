@@ -0,0 +1,87 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caps concurrent calls to one provider.
+ * A caller waits at most queueTimeout for a permit and then gets a BulkheadFullException,
+ * so a slow provider turns into quick 503s instead of every request thread piling up behind it.
+ * In-flight calls and rejections are published as provider.bulkhead.active and provider.bulkhead.rejected
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Duration queueTimeout;
+    private final Semaphore permits;
+    private final Counter rejected;
+
+    /**
+     * @param name the provider, used in errors and as the metric tag
+     * @param maxConcurrent calls allowed at once
+     * @param queueTimeout how long a caller waits for a permit
+     * @param meterRegistry receives the bulkhead metrics
+     */
+    public Bulkhead(String name, int maxConcurrent, Duration queueTimeout, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.queueTimeout = queueTimeout;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.rejected = Counter.builder("provider.bulkhead.rejected")
+                .tag("provider", name)
+                .register(meterRegistry);
+        Gauge.builder("provider.bulkhead.active", this, Bulkhead::getActive)
+                .tag("provider", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the call once a permit is free
+     * @throws BulkheadFullException if no permit was free within the queue timeout
+     */
+    public <T> T call(Supplier<T> call) {
+        acquire();
+        try {
+            return call.get();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Waits for a permit; every successful acquire must be followed by exactly one release
+     * @throws BulkheadFullException if no permit was free within the queue timeout
+     */
+    public void acquire() {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(queueTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new BulkheadFullException(name, queueTimeout);
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+}
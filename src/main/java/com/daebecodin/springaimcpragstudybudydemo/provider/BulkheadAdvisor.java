@@ -0,0 +1,49 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Puts a ChatClient's model calls behind a Bulkhead.
+ * Ordered right before the model call, so retrieval and memory advisors run without holding a permit.
+ * A streamed call holds its permit until the stream completes, fails or is cancelled
+ */
+public class BulkheadAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final Bulkhead bulkhead;
+
+    public BulkheadAdvisor(Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        return bulkhead.call(() -> chain.nextCall(request));
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+        return Flux.using(() -> {
+                    bulkhead.acquire(); // may block for the queue timeout, hence boundedElastic
+                    return bulkhead;
+                }, ignored -> chain.nextStream(request), Bulkhead::release)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public String getName() {
+        return "BulkheadAdvisor[" + bulkhead.getName() + "]";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 1; // the model call itself is LOWEST_PRECEDENCE
+    }
+}
@@ -0,0 +1,30 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Turns a full provider bulkhead into 503 with Retry-After for every controller, not only the quiz endpoints:
+ * document processing embeds through the embedding bulkhead too
+ */
+@RestControllerAdvice
+public class BulkheadExceptionHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkheadExceptionHandler.class);
+
+    /**
+     * A provider's bulkhead was full: answer 503 straight away instead of queueing behind a slow provider
+     */
+    @ExceptionHandler(BulkheadFullException.class)
+    public ResponseEntity<String> providerBusy(BulkheadFullException e) {
+        logger.warn(e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body("The " + e.getProvider() + " model is busy; try again shortly");
+    }
+}
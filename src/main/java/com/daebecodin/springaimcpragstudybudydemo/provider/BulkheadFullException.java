@@ -0,0 +1,29 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a provider's bulkhead had no free permit within its queue timeout
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    private final String provider;
+    private final Duration retryAfter;
+
+    public BulkheadFullException(String provider, Duration retryAfter) {
+        super("Too many concurrent " + provider + " calls; no permit within " + retryAfter);
+        this.provider = provider;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    /**
+     * @return a reasonable time for the client to wait before retrying
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,198 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import io.micrometer.context.ContextSnapshotFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Picks a ChatClient for model=auto.
+ * Providers that are available (see ProviderStats) come first, fastest median first; providers without
+ * enough calls yet sort to the front so they get measured. A failed call is retried once on the next provider.
+ * Ranking has no side effects; only a call that is really made claims an unhealthy provider's probe.
+ * With routing.hedge.enabled a second request goes to the next provider once the first has run past its own
+ * observed p95; whichever answers first wins and the other is cancelled
+ */
+@Component
+public class ModelRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRouter.class);
+
+    private final Map<String, ChatClient> clients = new LinkedHashMap<>();
+    private final ProviderStatsRegistry statsRegistry;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("model-route-", 0).factory());
+    private final ContextSnapshotFactory contextSnapshots = ContextSnapshotFactory.builder().build();
+
+    @Value("${routing.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${routing.hedge.min-delay:1s}")
+    private Duration hedgeMinDelay;
+
+    public ModelRouter(@Qualifier("openai") ChatClient openAiChatClient,
+                       @Qualifier("bedrock") ChatClient bedrockChatClient,
+                       ProviderStatsRegistry statsRegistry) {
+        this.clients.put("openai", openAiChatClient);
+        this.clients.put("bedrock", bedrockChatClient);
+        this.statsRegistry = statsRegistry;
+    }
+
+    /**
+     * @return provider names in the order they should be tried; does not claim any probe, so reports can call it freely
+     */
+    public List<String> rank() {
+        List<ProviderStats> available = new ArrayList<>();
+        List<ProviderStats> unavailable = new ArrayList<>();
+        for (String provider : clients.keySet()) {
+            ProviderStats stats = statsRegistry.get(provider);
+            (stats.isAvailable() ? available : unavailable).add(stats);
+        }
+        Comparator<ProviderStats> fastestFirst = Comparator.comparingLong(
+                stats -> stats.isMeasured() ? stats.snapshot().p50Nanos() : 0L);
+        available.sort(fastestFirst);
+        unavailable.sort(fastestFirst);
+        List<String> ranked = new ArrayList<>();
+        available.forEach(stats -> ranked.add(stats.getName()));
+        unavailable.forEach(stats -> ranked.add(stats.getName()));
+        return ranked;
+    }
+
+    /**
+     * @return the provider auto would use right now
+     */
+    public String pick() {
+        return rank().getFirst();
+    }
+
+    /**
+     * @return the provider a call made now should go to; claims the probe if that is an unhealthy provider
+     */
+    public String pickForCall() {
+        return rankForCall().getFirst();
+    }
+
+    public ChatClient client(String provider) {
+        return clients.get(provider);
+    }
+
+    /**
+     * Runs the request on the best provider, failing over to the next one and hedging if enabled
+     * @param request the call to make with whichever client is chosen
+     * @return the first successful result
+     */
+    public <T> T call(Function<ChatClient, T> request) {
+        List<String> ranked = rankForCall();
+        String first = ranked.getFirst();
+        String second = ranked.size() > 1 ? ranked.get(1) : null;
+
+        CompletionService<T> attempts = new ExecutorCompletionService<>(executor);
+        List<Future<T>> running = new ArrayList<>();
+        List<RouterAttempt> started = new ArrayList<>();
+        running.add(attempts.submit(attempt(first, request, started)));
+        boolean secondStarted = false;
+        RuntimeException lastFailure = null;
+        try {
+            Duration hedgeDelay = hedgeDelay(first);
+            int outstanding = 1;
+            while (outstanding > 0) {
+                Future<T> done = !secondStarted && hedgeDelay != null && second != null
+                        ? attempts.poll(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS)
+                        : attempts.take();
+                if (done == null) {
+                    // the first provider is slower than it usually is; race it against the next one
+                    logger.info("Hedging: {} passed its p95 of {}ms, also asking {}", first, hedgeDelay.toMillis(), second);
+                    running.add(attempts.submit(attempt(second, request, started)));
+                    secondStarted = true;
+                    outstanding++;
+                    continue;
+                }
+                outstanding--;
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    lastFailure = e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+                    if (outstanding == 0 && !secondStarted && second != null) {
+                        logger.warn("{} failed ({}); failing over to {}", first, lastFailure.getMessage(), second);
+                        running.add(attempts.submit(attempt(second, request, started)));
+                        secondStarted = true;
+                        outstanding++;
+                    }
+                }
+            }
+            throw lastFailure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a model", e);
+        } finally {
+            // marked before the interrupt, so the loser's failure is not held against its provider.
+            // A call that already finished was recorded, so marking it changes nothing
+            started.forEach(RouterAttempt::cancel);
+            running.forEach(future -> future.cancel(true)); // no-op for the winner; interrupts the loser
+        }
+    }
+
+    /**
+     * The ranking for a call about to be made. An unhealthy provider ranked first only because its probe is due
+     * keeps that place if this call claims the probe; otherwise another call already has it, and it moves to the back
+     */
+    private List<String> rankForCall() {
+        List<String> ranked = new ArrayList<>(rank());
+        for (int i = 0; i < ranked.size(); i++) {
+            ProviderStats stats = statsRegistry.get(ranked.getFirst());
+            if (stats.isHealthy() || stats.tryProbe()) {
+                break;
+            }
+            ranked.add(ranked.removeFirst());
+        }
+        return ranked;
+    }
+
+    /**
+     * The call as it will run on a router thread; carries the caller's observation along so its spans stay children of the request
+     * @param started gets the attempt, so the router can mark it cancelled
+     */
+    private <T> Callable<T> attempt(String provider, Function<ChatClient, T> request, List<RouterAttempt> started) {
+        RouterAttempt attempt = new RouterAttempt();
+        started.add(attempt);
+        Callable<T> call = contextSnapshots.captureAll().wrap(() -> request.apply(clients.get(provider)));
+        return () -> attempt.run(call);
+    }
+
+    /**
+     * @return how long to wait before hedging, or null when hedging is off or the provider has no p95 yet
+     */
+    private Duration hedgeDelay(String provider) {
+        ProviderStats stats = statsRegistry.get(provider);
+        if (!hedgeEnabled || !stats.isMeasured()) {
+            return null;
+        }
+        Duration p95 = Duration.ofNanos(stats.snapshot().p95Nanos());
+        return p95.compareTo(hedgeMinDelay) < 0 ? hedgeMinDelay : p95;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,128 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rolling latency and error rate of one provider over its last window calls.
+ * A provider is unhealthy once its error rate passes maxErrorRate; an unhealthy provider gets
+ * no traffic, so one probe call is let through every probeInterval to find out when it recovers
+ */
+public class ProviderStats {
+
+    private final String name;
+    private final long[] latencies; // nanos; ring buffer shared by successes and failures
+    private final boolean[] failed;
+    private final int minSamples;
+    private final double maxErrorRate;
+    private final long probeIntervalNanos;
+    private final AtomicLong lastProbe = new AtomicLong(System.nanoTime());
+    private int next;
+    private int size;
+
+    /**
+     * @param name the provider
+     * @param window calls remembered
+     * @param minSamples calls needed before the numbers are trusted; until then the provider counts as healthy
+     * @param maxErrorRate failing fraction above which the provider is unhealthy
+     * @param probeInterval how often an unhealthy provider gets one call anyway
+     */
+    public ProviderStats(String name, int window, int minSamples, double maxErrorRate, Duration probeInterval) {
+        this.name = name;
+        this.latencies = new long[window];
+        this.failed = new boolean[window];
+        this.minSamples = minSamples;
+        this.maxErrorRate = maxErrorRate;
+        this.probeIntervalNanos = probeInterval.toNanos();
+    }
+
+    public synchronized void recordSuccess(long latencyNanos) {
+        record(latencyNanos, false);
+    }
+
+    public synchronized void recordFailure(long latencyNanos) {
+        record(latencyNanos, true);
+    }
+
+    private void record(long latencyNanos, boolean failure) {
+        latencies[next] = latencyNanos;
+        failed[next] = failure;
+        next = (next + 1) % latencies.length;
+        size = Math.min(size + 1, latencies.length);
+    }
+
+    /**
+     * @return the current window, with percentiles over successful calls only
+     */
+    public synchronized Snapshot snapshot() {
+        long[] successes = new long[size];
+        int count = 0;
+        int failures = 0;
+        for (int i = 0; i < size; i++) {
+            if (failed[i]) {
+                failures++;
+            } else {
+                successes[count++] = latencies[i];
+            }
+        }
+        long[] sorted = Arrays.copyOf(successes, count);
+        Arrays.sort(sorted);
+        return new Snapshot(name, size, size == 0 ? 0 : (double) failures / size,
+                percentile(sorted, 0.50), percentile(sorted, 0.95));
+    }
+
+    /**
+     * @return true when the error rate is within bounds or there are not enough calls to judge yet
+     */
+    public boolean isHealthy() {
+        Snapshot snapshot = snapshot();
+        return snapshot.samples() < minSamples || snapshot.errorRate() <= maxErrorRate;
+    }
+
+    /**
+     * Read only, so it can be asked for reports and rankings as often as needed
+     * @return true when the provider should get traffic: healthy, or due for a probe
+     */
+    public boolean isAvailable() {
+        return isHealthy() || System.nanoTime() - lastProbe.get() >= probeIntervalNanos;
+    }
+
+    /**
+     * Claims the probe of an unhealthy provider; only for a caller that is about to send it the call
+     * @return true if the probe is due and this caller got it, false if it is not due or another caller was first
+     */
+    public boolean tryProbe() {
+        long last = lastProbe.get();
+        long now = System.nanoTime();
+        return now - last >= probeIntervalNanos && lastProbe.compareAndSet(last, now);
+    }
+
+    /**
+     * @return whether the latency numbers are based on enough calls to route on
+     */
+    public boolean isMeasured() {
+        return snapshot().samples() >= minSamples;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    /**
+     * @param provider the provider
+     * @param samples calls in the window
+     * @param errorRate failing fraction of those calls
+     * @param p50Nanos median latency of successful calls, 0 when there are none
+     * @param p95Nanos 95th percentile latency of successful calls, 0 when there are none
+     */
+    public record Snapshot(String provider, int samples, double errorRate, long p50Nanos, long p95Nanos) {
+    }
+}
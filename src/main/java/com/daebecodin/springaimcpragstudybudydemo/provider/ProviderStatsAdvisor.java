@@ -0,0 +1,72 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records every model call a ChatClient makes into its provider's ProviderStats.
+ * Runs outside the bulkhead, so waiting for a permit counts as latency and a rejection counts as a failure.
+ * Streams are measured to their first chunk, which is the latency a streaming client notices.
+ * Calls ModelRouter cancelled, such as a hedge's loser, are not recorded; they were not failures.
+ * The router marks those explicitly (see RouterAttempt) rather than leaving it to the thread's interrupt flag
+ */
+public class ProviderStatsAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final ProviderStats stats;
+
+    public ProviderStatsAdvisor(ProviderStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        long start = System.nanoTime();
+        try {
+            ChatClientResponse response = chain.nextCall(request);
+            stats.recordSuccess(System.nanoTime() - start);
+            return response;
+        } catch (RuntimeException e) {
+            if (!RouterAttempt.isCurrentCancelled()) {
+                stats.recordFailure(System.nanoTime() - start);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return chain.nextStream(request)
+                    .doOnNext(response -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            stats.recordSuccess(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            stats.recordFailure(System.nanoTime() - start);
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "ProviderStatsAdvisor[" + stats.getName() + "]";
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 2; // just outside BulkheadAdvisor
+    }
+}
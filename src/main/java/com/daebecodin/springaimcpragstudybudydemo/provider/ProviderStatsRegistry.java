@@ -0,0 +1,60 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One ProviderStats per provider name, shared by the advisors that record calls and the router that reads them
+ */
+@Component
+public class ProviderStatsRegistry {
+
+    private final Map<String, ProviderStats> stats = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    @Value("${routing.window:100}")
+    private int window;
+
+    @Value("${routing.min-samples:5}")
+    private int minSamples;
+
+    @Value("${routing.max-error-rate:0.5}")
+    private double maxErrorRate;
+
+    @Value("${routing.probe-interval:30s}")
+    private Duration probeInterval;
+
+    public ProviderStatsRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public ProviderStats get(String provider) {
+        return stats.computeIfAbsent(provider, this::create);
+    }
+
+    /**
+     * @return the current window of every provider seen so far
+     */
+    public List<ProviderStats.Snapshot> snapshots() {
+        return stats.values().stream().map(ProviderStats::snapshot).toList();
+    }
+
+    private ProviderStats create(String provider) {
+        ProviderStats providerStats = new ProviderStats(provider, window, minSamples, maxErrorRate, probeInterval);
+        Gauge.builder("provider.latency.p95", providerStats, s -> s.snapshot().p95Nanos() / 1e9)
+                .baseUnit("seconds")
+                .tag("provider", provider)
+                .register(meterRegistry);
+        Gauge.builder("provider.error.rate", providerStats, s -> s.snapshot().errorRate())
+                .tag("provider", provider)
+                .register(meterRegistry);
+        return providerStats;
+    }
+}
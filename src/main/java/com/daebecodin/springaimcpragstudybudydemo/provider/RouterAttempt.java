@@ -0,0 +1,40 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import java.util.concurrent.Callable;
+
+/**
+ * One model call ModelRouter makes on its own thread.
+ * The router marks the attempt cancelled before interrupting its thread, so ProviderStatsAdvisor, which runs on that
+ * thread, can tell a hedge loser from a real failure. The interrupt flag can't be trusted for that: HTTP clients
+ * usually turn the interrupt into an I/O error and clear it
+ */
+final class RouterAttempt {
+
+    private static final ThreadLocal<RouterAttempt> CURRENT = new ThreadLocal<>();
+
+    private volatile boolean cancelled;
+
+    /**
+     * @return whether the router gave up on the call running on this thread; false outside the router
+     */
+    static boolean isCurrentCancelled() {
+        RouterAttempt attempt = CURRENT.get();
+        return attempt != null && attempt.cancelled;
+    }
+
+    /**
+     * Runs the call with this attempt as the current one
+     */
+    <T> T run(Callable<T> call) throws Exception {
+        CURRENT.set(this);
+        try {
+            return call.call();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+}
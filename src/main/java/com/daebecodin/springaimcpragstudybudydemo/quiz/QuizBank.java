@@ -0,0 +1,266 @@
+package com.daebecodin.springaimcpragstudybudydemo.quiz;
+
+import com.daebecodin.springaimcpragstudybudydemo.provider.ModelRouter;
+import com.daebecodin.springaimcpragstudybudydemo.rag.ContextPacker;
+import com.daebecodin.springaimcpragstudybudydemo.rag.ContextPackingAdvisor;
+import com.daebecodin.springaimcpragstudybudydemo.vector.VectorStoreChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Quizzes generated ahead of time, per document section, so a /quiz request on a known topic is answered
+ * from the quiz_bank table in milliseconds instead of waiting on the model.
+ * A request matches a section when its best retrieved chunk scores at least min-score; the section is that chunk's
+ * file and page_number. Each quiz is handed out at most max-serves times, least served first.
+ * A scheduled run keeps pool-size quizzes per section, a few sections per run, and a section that is served from
+ * or asked for is topped up straight away in the background. When a document's chunks change its quizzes are dropped
+ */
+@Component
+public class QuizBank {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuizBank.class);
+
+    private static final String PROMPT = """
+            Write a quiz of 5 multiple choice questions about the course material below.
+            Only quiz on the course concepts; ignore anything about the company that published the document.
+            Put the question and its four options, lettered a. to d., in Question;
+            put the correct option's text in answerText and its letter in answerLetter.
+
+            Course material:
+            {context}
+            """;
+
+    private final QuizBankRepository repository;
+    private final ModelRouter modelRouter;
+    private final ContextPacker contextPacker;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService generators = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<QuizBankRepository.Section> toppingUp = ConcurrentHashMap.newKeySet();
+    // bumped when a document's chunks change, so a quiz generated from the old text is not saved afterwards
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Semaphore generationPermits;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter generated;
+    private final Counter failed;
+
+    @Value("${quiz.bank.enabled:true}")
+    private boolean enabled;
+
+    @Value("${quiz.bank.min-score:0.5}")
+    private double minScore;
+
+    @Value("${quiz.bank.pool-size:3}")
+    private int poolSize;
+
+    @Value("${quiz.bank.max-serves:10}")
+    private int maxServes;
+
+    @Value("${quiz.bank.sections-per-run:5}")
+    private int sectionsPerRun;
+
+    @Value("${quiz.bank.context-budget:3000}")
+    private int contextBudget;
+
+    public QuizBank(QuizBankRepository repository, ModelRouter modelRouter, ContextPacker contextPacker, ObjectMapper objectMapper,
+                    MeterRegistry meterRegistry, @Value("${quiz.bank.max-concurrent-generations:2}") int maxConcurrentGenerations) {
+        this.repository = repository;
+        this.modelRouter = modelRouter;
+        this.contextPacker = contextPacker;
+        this.objectMapper = objectMapper;
+        this.generationPermits = new Semaphore(maxConcurrentGenerations);
+        this.hits = Counter.builder("quiz.bank.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("quiz.bank.requests").tag("result", "miss").register(meterRegistry);
+        this.generated = Counter.builder("quiz.bank.generated").tag("outcome", "success").register(meterRegistry);
+        this.failed = Counter.builder("quiz.bank.generated").tag("outcome", "failure").register(meterRegistry);
+    }
+
+    /**
+     * Serves a banked quiz for the section the request's context came from
+     * @param context chunks retrieved for the request, best first
+     * @return the quiz, if the request is on a known topic and its section has one left
+     */
+    public Optional<String> serve(List<Document> context) {
+        if (!enabled || context.isEmpty()) {
+            return Optional.empty();
+        }
+        Document best = context.getFirst();
+        if (best.getScore() == null || best.getScore() < minScore) {
+            return Optional.empty(); // not close enough to any section to count as its topic
+        }
+        Optional<QuizBankRepository.Section> section = QuizBankRepository.Section.of(best);
+        if (section.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Optional<String> quiz;
+        try {
+            quiz = repository.take(section.get(), maxServes).flatMap(this::render);
+        } catch (DataAccessException e) {
+            logger.warn("Could not read the quiz bank: {}", e.getMessage());
+            return Optional.empty();
+        }
+        (quiz.isPresent() ? hits : misses).increment();
+        topUp(section.get()); // replace what was just served, or start the pool this request asked for
+        return quiz;
+    }
+
+    /**
+     * Fills sections that are short of pool-size quizzes, a few per run so a large corpus is not generated all at once
+     */
+    @Scheduled(initialDelayString = "${quiz.bank.initial-delay:1m}", fixedDelayString = "${quiz.bank.refill-interval:5m}")
+    void refill() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int removed = repository.deleteStale(maxServes);
+            Map<QuizBankRepository.Section, Integer> available = repository.available(maxServes);
+            List<QuizBankRepository.Section> shortSections = repository.sections().stream()
+                    .filter(section -> available.getOrDefault(section, 0) < poolSize)
+                    .filter(section -> !toppingUp.contains(section))
+                    .limit(sectionsPerRun)
+                    .toList();
+            logger.info("Quiz bank: removed {} used or orphaned quizzes, topping up {} sections", removed, shortSections.size());
+            shortSections.forEach(this::topUp);
+        } catch (DataAccessException e) {
+            logger.warn("Quiz bank refill skipped: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * A document was re-indexed, removed or renamed; its quizzes were made from text that may be gone
+     */
+    @EventListener
+    public void onVectorStoreChanged(VectorStoreChangedEvent event) {
+        String sourceFilename = event.getSourceFilename();
+        if (sourceFilename == null) {
+            return;
+        }
+        versions.computeIfAbsent(sourceFilename, ignored -> new AtomicLong()).incrementAndGet();
+        try {
+            int removed = repository.deleteBySource(sourceFilename);
+            if (removed > 0) {
+                logger.info("Invalidated {} banked quizzes for {}", removed, sourceFilename);
+            }
+        } catch (DataAccessException e) {
+            // the next refill drops them if the file is gone; a re-indexed file keeps them until then
+            logger.warn("Could not invalidate banked quizzes for {}: {}", sourceFilename, e.getMessage());
+        }
+    }
+
+    /**
+     * Generates quizzes for a section in the background until it has pool-size; one top-up per section at a time
+     */
+    private void topUp(QuizBankRepository.Section section) {
+        if (!toppingUp.add(section)) {
+            return;
+        }
+        generators.submit(() -> {
+            try {
+                int missing = poolSize - repository.available(section, maxServes);
+                for (int i = 0; i < missing; i++) {
+                    generationPermits.acquire();
+                    try {
+                        generate(section);
+                    } finally {
+                        generationPermits.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                failed.increment();
+                logger.warn("Could not generate a quiz for {} section {}: {}", section.sourceFilename(), section.section(), e.getMessage());
+            } finally {
+                toppingUp.remove(section);
+            }
+        });
+    }
+
+    private void generate(QuizBankRepository.Section section) {
+        long version = version(section.sourceFilename());
+        List<Document> chunks = repository.chunks(section);
+        if (chunks.isEmpty()) {
+            return;
+        }
+        String context = contextPacker.pack(chunks, contextBudget).documents().stream()
+                .map(Document::getText)
+                .collect(Collectors.joining(System.lineSeparator() + System.lineSeparator()));
+
+        QuizQuestions quiz = modelRouter.call(client -> client.prompt()
+                .user(user -> user.text(PROMPT).param("context", context))
+                .advisors(advisors -> advisors.param(ContextPackingAdvisor.SKIP_RETRIEVAL, true)) // the section is the context
+                .call()
+                .entity(QuizQuestions.class));
+        if (quiz == null || quiz.quizQuestions() == null
+                || quiz.quizQuestions().stream().noneMatch(question -> question.Question() != null && !question.Question().isBlank())) {
+            throw new IllegalStateException("the model returned no questions");
+        }
+
+        if (version(section.sourceFilename()) != version) {
+            logger.debug("{} changed while a quiz was generated for it; discarding the quiz", section.sourceFilename());
+            return;
+        }
+        try {
+            repository.save(section, objectMapper.writeValueAsString(quiz));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        generated.increment();
+        logger.debug("Banked a quiz for {} section {}", section.sourceFilename(), section.section());
+    }
+
+    private long version(String sourceFilename) {
+        return versions.computeIfAbsent(sourceFilename, ignored -> new AtomicLong()).get();
+    }
+
+    /**
+     * Lays the questions out like a live quiz; answers are held back for the next request, as the system prompt asks
+     */
+    private Optional<String> render(String json) {
+        try {
+            List<QuizQuestion> questions = objectMapper.readValue(json, QuizQuestions.class).quizQuestions();
+            StringBuilder quiz = new StringBuilder("Quiz").append(System.lineSeparator());
+            int number = 1;
+            for (QuizQuestion question : questions) {
+                if (question.Question() == null || question.Question().isBlank()) {
+                    continue;
+                }
+                quiz.append(System.lineSeparator()).append(number++).append(". ").append(question.Question().strip())
+                        .append(System.lineSeparator());
+            }
+            return Optional.of(quiz.toString());
+        } catch (JsonProcessingException e) {
+            logger.warn("Skipping unreadable banked quiz: {}", e.getOriginalMessage());
+            return Optional.empty();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        generators.shutdownNow();
+    }
+}
@@ -0,0 +1,158 @@
+package com.daebecodin.springaimcpragstudybudydemo.quiz;
+
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The quiz_bank table, plus the section queries over the vector table the bank is filled from.
+ * A section is every chunk of a source file with the same page_number; documents without pages are one section
+ */
+@Repository
+@DependsOn("databaseInitializer")
+public class QuizBankRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.ai.vectorstore.pgvector.schema-name:public}")
+    private String schemaName;
+
+    @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}")
+    private String tableName;
+
+    public QuizBankRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Hands out the least served quiz of a section and counts the serve; concurrent callers never wait on each other
+     * @param section the section to serve from
+     * @param maxServes quizzes served this many times are no longer handed out
+     * @return the quiz's QuizQuestions JSON, if the section has one left
+     */
+    public Optional<String> take(Section section, int maxServes) {
+        List<String> questions = jdbcTemplate.queryForList("""
+                UPDATE quiz_bank SET served_count = served_count + 1
+                WHERE id = (SELECT id FROM quiz_bank
+                            WHERE source_filename = ? AND section = ? AND served_count < ?
+                            ORDER BY served_count, id
+                            LIMIT 1
+                            FOR UPDATE SKIP LOCKED)
+                RETURNING questions
+                """, String.class, section.sourceFilename(), section.section(), maxServes);
+        return questions.stream().findFirst();
+    }
+
+    public void save(Section section, String questions) {
+        jdbcTemplate.update("INSERT INTO quiz_bank (source_filename, section, questions) VALUES (?, ?, ?)",
+                section.sourceFilename(), section.section(), questions);
+    }
+
+    /**
+     * @return quizzes in a section that can still be served
+     */
+    public int available(Section section, int maxServes) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM quiz_bank WHERE source_filename = ? AND section = ? AND served_count < ?",
+                Integer.class, section.sourceFilename(), section.section(), maxServes);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return servable quizzes per section, for sections that have any
+     */
+    public Map<Section, Integer> available(int maxServes) {
+        Map<Section, Integer> available = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT source_filename, section, count(*) AS quizzes FROM quiz_bank WHERE served_count < ? GROUP BY source_filename, section",
+                (RowCallbackHandler) rs -> available.put(
+                        new Section(rs.getString("source_filename"), rs.getString("section")), rs.getInt("quizzes")),
+                maxServes);
+        return available;
+    }
+
+    /**
+     * @return every section in the vector table, in file and page order
+     */
+    public List<Section> sections() {
+        return jdbcTemplate.query("""
+                SELECT DISTINCT metadata->>'source_filename' AS source_filename, COALESCE(metadata->>'page_number', '') AS section
+                FROM %s
+                WHERE metadata->>'source_filename' IS NOT NULL
+                ORDER BY 1, 2
+                """.formatted(table()),
+                (rs, rowNum) -> new Section(rs.getString("source_filename"), rs.getString("section")));
+    }
+
+    /**
+     * @return the chunks of one section
+     */
+    public List<Document> chunks(Section section) {
+        return jdbcTemplate.query("""
+                SELECT id, content FROM %s
+                WHERE metadata->>'source_filename' = ? AND COALESCE(metadata->>'page_number', '') = ?
+                """.formatted(table()),
+                (rs, rowNum) -> Document.builder()
+                        .id(rs.getString("id"))
+                        .text(rs.getString("content"))
+                        .metadata("source_filename", section.sourceFilename())
+                        .build(),
+                section.sourceFilename(), section.section());
+    }
+
+    /**
+     * Drops a document's quizzes; called when its chunks change
+     * @return quizzes removed
+     */
+    public int deleteBySource(String sourceFilename) {
+        return jdbcTemplate.update("DELETE FROM quiz_bank WHERE source_filename = ?", sourceFilename);
+    }
+
+    /**
+     * Drops quizzes that have been served out, and quizzes of files no longer in the vector table (removed or renamed)
+     * @return quizzes removed
+     */
+    public int deleteStale(int maxServes) {
+        return jdbcTemplate.update("""
+                DELETE FROM quiz_bank q
+                WHERE q.served_count >= ?
+                   OR NOT EXISTS (SELECT 1 FROM %s v WHERE v.metadata->>'source_filename' = q.source_filename)
+                """.formatted(table()), maxServes);
+    }
+
+    private String table() {
+        return schemaName + "." + tableName;
+    }
+
+    /**
+     * @param sourceFilename the document
+     * @param section the page_number the section starts at; empty for documents without pages
+     */
+    public record Section(String sourceFilename, String section) {
+
+        /**
+         * @return the section a retrieved chunk belongs to, if it came from a document
+         */
+        public static Optional<Section> of(Document chunk) {
+            Object sourceFilename = chunk.getMetadata().get("source_filename");
+            if (sourceFilename == null) {
+                return Optional.empty();
+            }
+            Object pageNumber = chunk.getMetadata().get("page_number");
+            String section = switch (pageNumber) {
+                case null -> "";
+                case Number number -> String.valueOf(number.longValue()); // JSON readers disagree on 12 vs 12.0
+                default -> pageNumber.toString();
+            };
+            return Optional.of(new Section(sourceFilename.toString(), section));
+        }
+    }
+}
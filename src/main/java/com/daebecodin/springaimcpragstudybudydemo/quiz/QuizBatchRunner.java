@@ -0,0 +1,184 @@
+package com.daebecodin.springaimcpragstudybudydemo.quiz;
+
+import com.daebecodin.springaimcpragstudybudydemo.provider.BulkheadFullException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs one quiz per topic, all at once, and emits each result as soon as it is ready.
+ * Every batch gets its own virtual thread executor that lives exactly as long as the batch: when the last topic
+ * finishes the stream completes, and when the client goes away every topic still running is interrupted.
+ * At most max-concurrent topics of a batch run at a time. Calls still go through the provider bulkheads;
+ * a topic the bulkhead turns away waits for its Retry-After and tries again instead of failing, until the batch timeout.
+ * When the timeout passes, every topic not finished yet is reported failed and its task interrupted, so a model call
+ * that hangs cannot hold the batch open. A failed topic is reported on its own and never fails the rest of the batch
+ */
+@Component
+public class QuizBatchRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuizBatchRunner.class);
+
+    private final Counter completed;
+    private final Counter failed;
+    private final ScheduledExecutorService deadlineTimer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("quiz-batch-deadline").daemon().factory());
+
+    @Value("${quiz.batch.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Value("${quiz.batch.timeout:5m}")
+    private Duration timeout;
+
+    public QuizBatchRunner(MeterRegistry meterRegistry) {
+        this.completed = Counter.builder("quiz.batch.topics").tag("outcome", "completed").register(meterRegistry);
+        this.failed = Counter.builder("quiz.batch.topics").tag("outcome", "failed").register(meterRegistry);
+    }
+
+    /**
+     * @param topics one quiz per topic
+     * @param generate makes the quiz for a topic; called on a virtual thread
+     * @return one result per topic, in the order they finish
+     */
+    public Flux<Result> run(List<String> topics, Function<String, String> generate) {
+        if (topics.isEmpty()) {
+            return Flux.empty();
+        }
+        return Flux.create(sink -> {
+            ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+            Semaphore permits = new Semaphore(maxConcurrent);
+            Batch batch = new Batch(topics, sink);
+            long deadline = batch.start + timeout.toNanos();
+            // reports what is left as failed and completes the stream, which interrupts the tasks through onDispose
+            ScheduledFuture<?> expiry = deadlineTimer.schedule(batch::expire, timeout.toNanos(), TimeUnit.NANOSECONDS);
+            sink.onDispose(() -> { // finished, timed out, or the client disconnected: nothing keeps running
+                expiry.cancel(false);
+                executor.shutdownNow();
+            });
+
+            for (int i = 0; i < topics.size(); i++) {
+                int index = i;
+                String topic = topics.get(i);
+                executor.submit(() -> {
+                    try {
+                        String quiz = generate(topic, generate, permits, deadline);
+                        batch.report(new Result(index, topic, quiz, null, elapsedMillis(batch.start)));
+                    } catch (InterruptedException e) {
+                        // cancelled with the batch; a timed out topic has already been reported
+                    } catch (RuntimeException e) {
+                        logger.warn("Batch quiz for {} failed: {}", topic, e.getMessage());
+                        String error = Objects.requireNonNullElse(e.getMessage(), e.getClass().getSimpleName());
+                        batch.report(new Result(index, topic, null, error, elapsedMillis(batch.start)));
+                    }
+                });
+            }
+            executor.shutdown(); // accepts no more tasks; the ones submitted keep running
+        });
+    }
+
+    private String generate(String topic, Function<String, String> generate, Semaphore permits, long deadline)
+            throws InterruptedException {
+        if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            throw new IllegalStateException("Timed out waiting for a turn in the batch");
+        }
+        try {
+            while (true) {
+                try {
+                    return generate.apply(topic);
+                } catch (BulkheadFullException e) {
+                    // the provider is busy with other traffic; a batch can afford to wait for it
+                    Duration retryAfter = e.getRetryAfter();
+                    if (System.nanoTime() + retryAfter.toNanos() > deadline) {
+                        throw e;
+                    }
+                    Thread.sleep(retryAfter);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        deadlineTimer.shutdownNow();
+    }
+
+    /**
+     * Reports every topic of one batch exactly once: by its own task, or as timed out if the deadline comes first
+     */
+    private final class Batch {
+
+        private final List<String> topics;
+        private final FluxSink<Result> sink;
+        private final long start = System.nanoTime();
+        private final Set<Integer> reported = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger remaining;
+
+        Batch(List<String> topics, FluxSink<Result> sink) {
+            this.topics = topics;
+            this.sink = sink;
+            this.remaining = new AtomicInteger(topics.size());
+        }
+
+        void report(Result result) {
+            if (!reported.add(result.index())) {
+                return; // the deadline got there first
+            }
+            (result.succeeded() ? completed : failed).increment();
+            sink.next(result);
+            if (remaining.decrementAndGet() == 0) {
+                sink.complete();
+            }
+        }
+
+        void expire() {
+            int unfinished = remaining.get();
+            if (unfinished > 0) {
+                logger.warn("Batch of {} topics reached its {} timeout with {} unfinished", topics.size(), timeout, unfinished);
+            }
+            for (int i = 0; i < topics.size(); i++) {
+                report(new Result(i, topics.get(i), null, "Timed out after " + timeout, elapsedMillis(start)));
+            }
+        }
+    }
+
+    /**
+     * The outcome for one topic
+     * @param index the topic's position in the request
+     * @param topic the topic
+     * @param quiz the quiz; null if it failed
+     * @param error why it failed; null if it succeeded
+     * @param elapsedMillis time from the start of the batch to this result, including any wait for a turn
+     */
+    public record Result(int index, String topic, String quiz, String error, long elapsedMillis) {
+
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+}
@@ -1,34 +1,88 @@
 package com.daebecodin.springaimcpragstudybudydemo.quiz;
 
 import com.daebecodin.springaimcpragstudybudydemo.document.DocumentIngestion;
-import org.apache.tika.exception.TikaException;
+import com.daebecodin.springaimcpragstudybudydemo.document.TextExtractionService;
+import com.daebecodin.springaimcpragstudybudydemo.embedding.CachingEmbeddingModel;
+import com.daebecodin.springaimcpragstudybudydemo.memory.WindowedChatMemory;
+import com.daebecodin.springaimcpragstudybudydemo.provider.ModelRouter;
+import com.daebecodin.springaimcpragstudybudydemo.provider.ProviderStats;
+import com.daebecodin.springaimcpragstudybudydemo.provider.ProviderStatsRegistry;
+import com.daebecodin.springaimcpragstudybudydemo.vector.VectorStorageReport;
+import io.micrometer.observation.Observation;
+import jakarta.servlet.http.HttpServletRequest;
+import io.micrometer.observation.ObservationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.converter.BeanOutputConverter;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @RestController
 public class QuizController {
 
+   private static final Logger logger = LoggerFactory.getLogger(QuizController.class);
+
+    // names the chat memory window when the conversation parameter is not given
+    private static final String CONVERSATION_HEADER = "X-Conversation-Id";
+    private static final int MAX_CONVERSATION_ID_LENGTH = 255; // chat_memory.conversation_id
+
+    // system prompt for the structured stream; replaces the plain-text quiz format of the primary client's default
+    private static final String STRUCTURED_QUIZ_SYSTEM = """
+            You are a study assistant. Write a quiz of 5 multiple choice questions about the course material in the context
+            that answers the student's request. Only quiz on the course concepts; ignore anything about the company that published the document.
+            Put the question and its four options, lettered a. to d., in Question;
+            put the correct option's text in answerText and its letter in answerLetter.
+
+            {format}
+            """;
+
    private final ChatClient primaryChatClient;
    private final ChatClient openAiChatClient;
    private final ChatClient bedrockChatClient;
    private final DocumentIngestion documentIngestion;
    private final VectorStore vectorStore;
-   private final QuestionAnswerAdvisor questionAnswerAdvisor;
+   private final CachingEmbeddingModel cachingEmbeddingModel;
+   private final SemanticQuizCache semanticQuizCache;
+   private final TextExtractionService textExtractionService;
+   private final VectorStorageReport vectorStorageReport;
+   private final ObservationRegistry observationRegistry;
+   private final ModelRouter modelRouter;
+   private final ProviderStatsRegistry providerStats;
+   private final QuizRequestCoalescer quizRequestCoalescer;
+   private final QuizBank quizBank;
+   private final QuizBatchRunner quizBatchRunner;
+   private final WindowedChatMemory chatMemory;
+   private final int maxBatchTopics;
 
     /**
      * Constructs a Controller with all chat clients, document process capabilities, data storage, and memory
@@ -36,49 +90,319 @@ public class QuizController {
      * @param openAiChatClient OpenAi ChatClient
      * @param bedrockChatClient AWS Bedrock ChatClient
      * @param documentIngestion Our processes for document ingestion
-     * @param questionAnswerAdvisor Provides chat memory for the conversion
      * @param vectorStore Stores data as embedding for easy retrieval for the model; allows similarity searches
+     * @param cachingEmbeddingModel The embedding model behind the vector store; reports cache hits and misses
+     * @param semanticQuizCache Reuses quizzes generated for prompts with the same meaning and context
+     * @param textExtractionService Streams text extracted from uploaded documents
+     * @param vectorStorageReport Measures recall and latency of each vector storage mode
+     * @param observationRegistry Records a span and timer around each quiz request
+     * @param modelRouter Chooses the provider for model=auto
+     * @param providerStats Rolling latency and error rate per provider
+     * @param quizRequestCoalescer Lets identical concurrent requests share one generation
+     * @param quizBank Pre-generated quizzes per document section
+     * @param quizBatchRunner Generates the quizzes of a batch side by side
+     * @param chatMemory Conversation windows; quizzes served without a model call are written here by hand
+     * @param maxBatchTopics Most topics one batch may ask for
      */
     public QuizController(ChatClient primaryChatClient,
                          @Qualifier("openai") ChatClient openAiChatClient,
                          @Qualifier("bedrock") ChatClient bedrockChatClient,
                           DocumentIngestion documentIngestion,
-                          QuestionAnswerAdvisor questionAnswerAdvisor,
-                          VectorStore vectorStore
+                          VectorStore vectorStore,
+                          CachingEmbeddingModel cachingEmbeddingModel,
+                          SemanticQuizCache semanticQuizCache,
+                          TextExtractionService textExtractionService,
+                          VectorStorageReport vectorStorageReport,
+                          ObservationRegistry observationRegistry,
+                          ModelRouter modelRouter,
+                          ProviderStatsRegistry providerStats,
+                          QuizRequestCoalescer quizRequestCoalescer,
+                          QuizBank quizBank,
+                          QuizBatchRunner quizBatchRunner,
+                          WindowedChatMemory chatMemory,
+                          @Value("${quiz.batch.max-topics:50}") int maxBatchTopics
     ) {
         this.primaryChatClient = primaryChatClient;
         this.openAiChatClient = openAiChatClient;
         this.bedrockChatClient = bedrockChatClient;
         this.documentIngestion = documentIngestion;
-        this.questionAnswerAdvisor = questionAnswerAdvisor;
         this.vectorStore = vectorStore;
+        this.cachingEmbeddingModel = cachingEmbeddingModel;
+        this.semanticQuizCache = semanticQuizCache;
+        this.textExtractionService = textExtractionService;
+        this.vectorStorageReport = vectorStorageReport;
+        this.observationRegistry = observationRegistry;
+        this.modelRouter = modelRouter;
+        this.providerStats = providerStats;
+        this.quizRequestCoalescer = quizRequestCoalescer;
+        this.quizBank = quizBank;
+        this.quizBatchRunner = quizBatchRunner;
+        this.chatMemory = chatMemory;
+        this.maxBatchTopics = maxBatchTopics;
     }
 
 
     /**
-     *
+     * Runs inside a quiz.request observation; the query embedding, vector search, advisors and model call
+     * show up as its children, so a trace shows where the time went
      * @param query The request
-     * @param model The model to query
+     * @param model The model to query: openai, bedrock, or auto for the fastest healthy provider
+     * @param cache Set to false to skip the semantic cache and quiz bank and always generate a new quiz
+     * @param conversation The student's conversation; see conversationId
      * @return The model response
      */
     @GetMapping("/quiz")
     public String quizMe(@RequestParam(defaultValue="quiz me on spring mvc") String query,
-                         @RequestParam(defaultValue="openai") String model) { // pick a model
-        
-        ChatClient selectedClient = switch (model.toLowerCase()) {
-            case "openai" -> openAiChatClient;
-            case "bedrock" -> bedrockChatClient;
-            default -> primaryChatClient;
-        };
-        
+                         @RequestParam(defaultValue="openai") String model, // pick a model
+                         @RequestParam(defaultValue="true") boolean cache,
+                         @RequestParam(required = false) String conversation,
+                         HttpServletRequest httpRequest) {
+        return observedQuiz(modelScope(model), query, cache, conversationId(conversation, httpRequest));
+    }
+
+    /**
+     * Quizzes for a list of topics, generated concurrently and streamed back as each one finishes.
+     * Each topic goes through the same caches, bank and model selection as /quiz, and a topic that fails is
+     * reported as a "failed" event without stopping the others. A final "done" event sums up the batch
+     * @param request the topics, the model, and whether the caches may be used
+     * @return a "quiz" or "failed" event per topic, in the order they finish, then "done"
+     */
+    @PostMapping(path = "/quiz/batch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> quizBatch(@RequestBody QuizBatchRequest request, HttpServletRequest httpRequest) {
+        List<String> topics = Optional.ofNullable(request.topics()).orElse(List.of()).stream()
+                .filter(topic -> topic != null && !topic.isBlank())
+                .toList();
+        if (topics.isEmpty() || topics.size() > maxBatchTopics) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Send between 1 and " + maxBatchTopics + " topics");
+        }
+        String modelScope = modelScope(Optional.ofNullable(request.model()).orElse("openai"));
+        boolean cache = !Boolean.FALSE.equals(request.cache());
+        String conversationId = conversationId(request.conversation(), httpRequest); // the session is only reachable on this thread
+
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicInteger failures = new AtomicInteger();
+            AtomicLong slowest = new AtomicLong();
+            return quizBatchRunner.run(topics, topic -> observedQuiz(modelScope, topic, cache, conversationId))
+                    .doOnNext(result -> {
+                        slowest.accumulateAndGet(result.elapsedMillis(), Math::max);
+                        if (!result.succeeded()) {
+                            failures.incrementAndGet();
+                        }
+                    })
+                    .map(result -> ServerSentEvent.<Object>builder(result).event(result.succeeded() ? "quiz" : "failed").build())
+                    .concatWith(Mono.fromSupplier(() -> ServerSentEvent.<Object>builder(new BatchSummary(topics.size(),
+                                    topics.size() - failures.get(), failures.get(),
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), slowest.get()))
+                            .event("done")
+                            .build()))
+                    .doOnCancel(() -> logger.info("Client disconnected; cancelled a batch of {} quizzes", topics.size()));
+        });
+    }
+
+    /**
+     * Runs the quiz inside a quiz.request observation
+     */
+    private String observedQuiz(String modelScope, String query, boolean cache, String conversationId) {
+        Observation observation = Observation.createNotStarted("quiz.request", observationRegistry)
+                .contextualName("quiz " + modelScope)
+                .lowCardinalityKeyValue("model", modelScope)
+                .highCardinalityKeyValue("query", query);
+        return observation.observe(() -> quiz(observation, modelScope, query, cache, conversationId));
+    }
+
+    private String quiz(Observation observation, String modelScope, String query, boolean cache, String conversationId) {
+        if (!cache) {
+            observation.lowCardinalityKeyValue("semantic.cache", "skipped");
+            return generateQuiz(modelScope, query, conversationId);
+        }
+
+        List<Document> context = retrieve(query);
+        float[] promptEmbedding = cachingEmbeddingModel.embed(query);
+
+        Optional<String> cached = semanticQuizCache.lookup(modelScope, promptEmbedding, context);
+        observation.lowCardinalityKeyValue("semantic.cache", cached.isPresent() ? "hit" : "miss");
+        if (cached.isEmpty()) {
+            // a known topic is served from the pre-generated pool of the section it retrieved
+            cached = quizBank.serve(context);
+            observation.lowCardinalityKeyValue("quiz.bank", cached.isPresent() ? "hit" : "miss");
+        }
+        if (cached.isPresent()) {
+            remember(modelScope, conversationId, query, cached.get());
+            return cached.get();
+        }
+
+        // a miss may already be generating for another student; share it rather than asking the model twice
+        List<String> contextIds = context.stream().map(Document::getId).toList();
+        AtomicBoolean generatedHere = new AtomicBoolean();
+        String quiz = quizRequestCoalescer.call(query, modelScope, contextIds, () -> {
+            generatedHere.set(true);
+            String generated = generateQuiz(modelScope, query, conversationId);
+            semanticQuizCache.put(modelScope, promptEmbedding, context, generated);
+            return generated;
+        });
+        if (!generatedHere.get()) {
+            remember(modelScope, conversationId, query, quiz); // a follower; the leader's memory got the turn, not this one's
+        }
+        return quiz;
+    }
+
+    /**
+     * Writes a quiz this request got without its own model call (semantic cache, quiz bank or another request's
+     * generation) into the student's conversation, the way MessageChatMemoryAdvisor records a generated one.
+     * Without it "now give me the answers" would find no quiz in the window. Only the primary client replays memory
+     */
+    private void remember(String modelScope, String conversationId, String query, String quiz) {
+        if ("primary".equals(modelScope)) {
+            chatMemory.add(conversationId, List.of(new UserMessage(query), new AssistantMessage(quiz)));
+        }
+    }
+
+    /**
+     * The same search the client's ContextPackingAdvisor runs, so the advisor gets it from the retrieval cache
+     */
+    private List<Document> retrieve(String query) {
+        return Optional.ofNullable(vectorStore.similaritySearch(SearchRequest.builder()
+                        .query(query)
+                        .build()))
+                .orElse(Collections.emptyList());
+    }
+
+    /**
+     * auto goes through the router, which fails over and hedges; any other scope calls its own client
+     */
+    private String generateQuiz(String modelScope, String query, String conversationId) {
+        if ("auto".equals(modelScope)) {
+            return modelRouter.call(client -> generateQuiz(client, query, conversationId));
+        }
+        return generateQuiz(selectClient(modelScope), query, conversationId);
+    }
+
+    private String generateQuiz(ChatClient selectedClient, String query, String conversationId) {
         return selectedClient.prompt()
                 .user(query) // the user message is what the client inputs
-                .advisors(questionAnswerAdvisor)
+                .advisors(advisor -> advisor.param(ChatMemory.CONVERSATION_ID, conversationId)) // the student's own memory window
                 .call() // blocking call so the response is not streamed to a client
 //                .entity(QuizQuestions.class); // return the responses in JSON format
                 .content(); // only returning string content of response
     }
 
+    /**
+     * Streams the quiz as it is generated instead of waiting for the whole response.
+     * Each token is sent as a "token" event and a final "done" event marks the end.
+     * Identical requests (same prompt, model and retrieved chunks) made while a stream is running share it and get every token from the start.
+     * If every client on a stream disconnects the subscription is cancelled, which closes the provider
+     * stream so no more tokens are generated for it
+     * @param query The request
+     * @param model The model to query
+     * @param conversation The student's conversation; see conversationId
+     * @return the quiz as server sent events
+     */
+    @GetMapping(path = "/quiz/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> quizMeStream(@RequestParam(defaultValue="quiz me on spring mvc") String query,
+                                                      @RequestParam(defaultValue="openai") String model,
+                                                      @RequestParam(required = false) String conversation,
+                                                      HttpServletRequest httpRequest) {
+        String modelScope = modelScope(model);
+        String conversationId = conversationId(conversation, httpRequest);
+        // only requests that retrieved the same chunks share a stream
+        List<String> contextIds = retrieve(query).stream().map(Document::getId).toList();
+        AtomicBoolean generatedHere = new AtomicBoolean();
+        StringBuilder quiz = new StringBuilder();
+        return quizRequestCoalescer.stream(query, modelScope, contextIds, () -> {
+                    generatedHere.set(true);
+                    return selectClient(modelScope).prompt()
+                            .user(query)
+                            .advisors(advisor -> advisor.param(ChatMemory.CONVERSATION_ID, conversationId))
+                                    .stream() // tokens are emitted as the model produces them
+                            .content();
+                })
+                .doOnNext(quiz::append)
+                .doOnComplete(() -> {
+                    if (!generatedHere.get()) {
+                        remember(modelScope, conversationId, query, quiz.toString()); // joined another request's stream
+                    }
+                })
+                .map(token -> ServerSentEvent.builder(token).event("token").build())
+                .concatWithValues(ServerSentEvent.builder("").event("done").build())
+                .onErrorResume(e -> {
+                    logger.error("Error streaming quiz for {}: {}", query, e.getMessage());
+                    return Flux.just(ServerSentEvent.builder("Error generating quiz").event("error").build());
+                })
+                .doOnCancel(() -> logger.info("Client disconnected; cancelled quiz stream for {}", query));
+    }
+
+    /**
+     * Streams the quiz as newline delimited JSON, one QuizQuestion per line.
+     * The model is asked for the QuizQuestions structure and the response is parsed while it streams,
+     * so each question is sent as soon as its JSON object is complete.
+     * The format instructions go in the system message: the user message stays the bare query, since that is what
+     * the retrieval advisor searches with and what the retrieval cache is keyed on
+     * @param query The request
+     * @param model The model to query
+     * @param conversation The student's conversation; see conversationId
+     * @return the questions as they are completed
+     */
+    @GetMapping(path = "/quiz/stream/questions", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<QuizQuestion> quizMeStructuredStream(@RequestParam(defaultValue="quiz me on spring mvc") String query,
+                                                     @RequestParam(defaultValue="openai") String model,
+                                                     @RequestParam(required = false) String conversation,
+                                                     HttpServletRequest httpRequest) {
+        var outputConverter = new BeanOutputConverter<>(QuizQuestions.class);
+        String conversationId = conversationId(conversation, httpRequest);
+
+        return Flux.defer(() -> {
+            var parser = new QuizQuestionStreamParser(); // one per response
+            return selectClient(modelScope(model)).prompt()
+                    .system(system -> system.text(STRUCTURED_QUIZ_SYSTEM).param("format", outputConverter.getFormat())) // asks for the QuizQuestions JSON shape
+                    .user(query)
+                    .advisors(advisor -> advisor.param(ChatMemory.CONVERSATION_ID, conversationId))
+                        .stream()
+                    .content()
+                    .concatMapIterable(parser::accept)
+                    .doOnComplete(() -> logger.info("Streamed {} quiz questions for {} ({} malformed elements skipped)",
+                            parser.getEmitted(), query, parser.getSkipped()));
+        }).doOnCancel(() -> logger.info("Client disconnected; cancelled structured quiz stream for {}", query));
+    }
+
+    /**
+     * The chat memory window a request belongs to: the conversation parameter, else the X-Conversation-Id header,
+     * else the HTTP session, so a browser gets a window of its own without sending anything.
+     * Without one every student would share MessageChatMemoryAdvisor's "default" window
+     */
+    private static String conversationId(String conversation, HttpServletRequest httpRequest) {
+        String conversationId = conversation != null && !conversation.isBlank() ? conversation : httpRequest.getHeader(CONVERSATION_HEADER);
+        if (conversationId == null || conversationId.isBlank()) {
+            return httpRequest.getSession().getId();
+        }
+        if (conversationId.length() > MAX_CONVERSATION_ID_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Conversation ids are at most " + MAX_CONVERSATION_ID_LENGTH + " characters");
+        }
+        return conversationId;
+    }
+
+    private ChatClient selectClient(String modelScope) {
+        return switch (modelScope) {
+            case "openai" -> openAiChatClient;
+            case "bedrock" -> bedrockChatClient;
+            case "auto" -> modelRouter.client(modelRouter.pickForCall()); // streams are not hedged
+            default -> primaryChatClient;
+        };
+    }
+
+    /**
+     * Maps the model request parameter onto the client it selects; unknown values use the primary client
+     */
+    private static String modelScope(String model) {
+        return switch (model.toLowerCase()) {
+            case "openai" -> "openai";
+            case "bedrock" -> "bedrock";
+            case "auto" -> "auto";
+            default -> "primary";
+        };
+    }
+
     // PDF Document Reader
     @GetMapping("/document")
     public List<Document> linkedBagImplementations() {
@@ -87,17 +411,24 @@ public class QuizController {
     }
 
     /**
-     * Uploads a document and returns the extracted text
+     * Uploads a document and streams back the extracted text
+     * The text is written into the response as Tika produces it, so large documents are never held in memory
      * @param file file to be uploaded
-     * @return extracted text
+     * @return extracted text as {"fileName", "content", "truncated"} JSON
      */
     @PostMapping("/upload-for-text")
-    public ResponseEntity<ExtractedDocument> uploadDocument(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<StreamingResponseBody> uploadDocument(@RequestParam("file") MultipartFile file) {
         try {
-            var extractedText = documentIngestion.extractTextFromDocument(file);
-            var extractedDocument = new ExtractedDocument(file.getOriginalFilename(), extractedText);
-            return ResponseEntity.ok(extractedDocument);
-        } catch (IOException | TikaException e ) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(textExtractionService.extractAsJson(file));
+        } catch (TextExtractionService.ExtractionRejectedException e) {
+            logger.warn("Rejected text extraction for {}: {}", file.getOriginalFilename(), e.getMessage());
+            return switch (e.getReason()) {
+                case TOO_LARGE -> ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+                case BUSY -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            };
+        } catch (IOException e) {
             return ResponseEntity.internalServerError().build();
         }
     }
@@ -153,8 +484,55 @@ public class QuizController {
         return ResponseEntity.ok(debugContexts);
     }
 
-    public record ExtractedDocument(String fileName, String content) {
+    /**
+     * Debug endpoint to see how often embeddings are served from the cache
+     * @return hit and miss counts for each cache tier
+     */
+    @GetMapping("/debug/embedding-cache")
+    public CachingEmbeddingModel.CacheStats debugEmbeddingCache() {
+        return cachingEmbeddingModel.getStats();
+    }
+
+    /**
+     * Debug endpoint comparing full, halfvec and binary storage on this database
+     * @param samples stored embeddings used as queries
+     * @param topK results compared per query
+     * @return recall against an exact scan, latency and index size for each mode, and the table's total index size
+     */
+    @GetMapping("/debug/vector-storage")
+    public VectorStorageReport.Report debugVectorStorage(@RequestParam(defaultValue = "50") int samples,
+                                                         @RequestParam(defaultValue = "5") int topK) {
+        return vectorStorageReport.run(samples, topK);
+    }
+
+    /**
+     * Debug endpoint showing what model=auto sees
+     * @return each provider's rolling latency and error rate, and the order auto would try them in
+     */
+    @GetMapping("/debug/routing")
+    public RoutingReport debugRouting() {
+        return new RoutingReport(modelRouter.rank(), providerStats.snapshots());
+    }
+
+    public record RoutingReport(List<String> order, List<ProviderStats.Snapshot> providers) {
+    }
+
+    /**
+     * @param topics one quiz per topic
+     * @param model openai, bedrock or auto; openai when left out
+     * @param cache false to skip the semantic cache and quiz bank
+     * @param conversation the student's conversation; the X-Conversation-Id header or the session when left out
+     */
+    public record QuizBatchRequest(List<String> topics, String model, Boolean cache, String conversation) {
+    }
+
+    /**
+     * @param elapsedMillis time for the whole batch
+     * @param slowestMillis time to the last result; close to elapsedMillis when the topics really ran side by side
+     */
+    public record BatchSummary(int topics, int completed, int failed, long elapsedMillis, long slowestMillis) {
     }
+
     public record DebugContext(String contentPreview, Object metadata, int fullContentLength, String documentId) {
     }
 
@@ -0,0 +1,131 @@
+package com.daebecodin.springaimcpragstudybudydemo.quiz;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Pulls QuizQuestion objects out of a JSON response while it is still being streamed.
+ * Tokens are fed in as they arrive; every object that is an element of an array is returned
+ * as soon as its closing brace is seen, so question 1 can be shown while the rest is generated.
+ * Works for {"quizQuestions": [...]} as well as a bare array, skips anything before the JSON
+ * starts (prose, code fences) and drops elements that do not parse instead of failing the stream.
+ * One instance per response; not thread safe
+ */
+public class QuizQuestionStreamParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuizQuestionStreamParser.class);
+
+    // models are not consistent about the capital Q in "Question"
+    private static final ObjectMapper objectMapper = JsonMapper.builder()
+            .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private final Deque<Character> containers = new ArrayDeque<>();
+    private final StringBuilder element = new StringBuilder();
+    private int elementDepth = -1; // container depth the captured element opened at; -1 when not capturing
+    private boolean started;
+    private boolean inString;
+    private boolean escaped;
+    private int emitted;
+    private int skipped;
+
+    /**
+     * Feeds the next piece of the response
+     * @param token text exactly as the model streamed it
+     * @return questions completed by this token, possibly none
+     */
+    public List<QuizQuestion> accept(String token) {
+        List<QuizQuestion> completed = new ArrayList<>();
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+
+            if (!started) {
+                if (c != '{' && c != '[') {
+                    continue; // anything before the JSON starts
+                }
+                started = true;
+            }
+
+            if (elementDepth >= 0) {
+                element.append(c);
+            }
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '"' -> inString = true;
+                case '{', '[' -> {
+                    if (c == '{' && elementDepth < 0 && !containers.isEmpty() && containers.peek() == '[') {
+                        elementDepth = containers.size();
+                        element.setLength(0);
+                        element.append(c);
+                    }
+                    containers.push(c);
+                }
+                case '}', ']' -> {
+                    if (containers.isEmpty()) {
+                        continue; // stray closer, e.g. from trailing prose
+                    }
+                    containers.pop();
+                    if (c == '}' && containers.size() == elementDepth) {
+                        parse(element.toString(), completed);
+                        elementDepth = -1;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * @return questions emitted so far
+     */
+    public int getEmitted() {
+        return emitted;
+    }
+
+    /**
+     * @return array elements that could not be read as a question
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    private void parse(String json, List<QuizQuestion> completed) {
+        try {
+            QuizQuestion question = objectMapper.readValue(json, QuizQuestion.class);
+            if (question.Question() == null || question.Question().isBlank()) {
+                skipped++;
+                logger.debug("Skipping array element without a question: {}", json);
+                return;
+            }
+            completed.add(question);
+            emitted++;
+        } catch (JsonProcessingException e) {
+            skipped++;
+            logger.warn("Skipping malformed quiz question: {}", e.getOriginalMessage());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.daebecodin.springaimcpragstudybudydemo.quiz;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Single-flight for quiz generation.
+ * When a class starts, many students send the same prompt within seconds. The first request for a key
+ * (the leader) generates the quiz; identical requests that arrive while it is running (followers) wait for
+ * that result instead of starting their own. Streams work the same way: followers subscribe to the leader's
+ * stream and get every token from the start. Nothing is kept once the flight lands; that is the semantic cache's job.
+ * A follower that is interrupted while waiting (a batch past its deadline, a client gone) stops waiting and is
+ * cancelled; the leader and any other followers carry on.
+ * <p>
+ * Metrics: quiz.coalesce.requests (role=leader|follower), quiz.coalesce.window (how long each flight was open),
+ * quiz.coalesce.followers (followers per flight) and quiz.coalesce.in-flight
+ */
+@Component
+public class QuizRequestCoalescer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Map<Key, Flight<String>> calls = new ConcurrentHashMap<>();
+    private final Map<Key, Flight<Flux<String>>> streams = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public QuizRequestCoalescer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("quiz.coalesce.in-flight", calls, Map::size).tag("mode", "call").register(meterRegistry);
+        Gauge.builder("quiz.coalesce.in-flight", streams, Map::size).tag("mode", "stream").register(meterRegistry);
+    }
+
+    /**
+     * Generates once per key while a generation is in flight
+     * @param query the user's prompt; compared after normalizing case and whitespace
+     * @param modelScope the model the quiz is for
+     * @param contextIds ids of the retrieved chunks, so the same prompt over different context is not shared
+     * @param generate makes the quiz; only called by the leader
+     * @return the leader's quiz
+     * @throws CancellationException if the thread is interrupted while waiting as a follower
+     */
+    public String call(String query, String modelScope, List<String> contextIds, Supplier<String> generate) {
+        Key key = new Key(normalize(query), modelScope, contextIds);
+        Flight<String> flight = new Flight<>(new CompletableFuture<>());
+        Flight<String> existing = calls.putIfAbsent(key, flight);
+        if (existing != null) {
+            existing.followers().incrementAndGet();
+            counter("call", "follower").increment();
+            return await(existing);
+        }
+
+        counter("call", "leader").increment();
+        long start = System.nanoTime();
+        try {
+            String quiz = generate.get();
+            flight.result().complete(quiz);
+            return quiz;
+        } catch (RuntimeException e) {
+            flight.result().completeExceptionally(e); // followers fail with the leader; they would most likely fail the same way
+            throw e;
+        } finally {
+            calls.remove(key, flight);
+            land("call", flight, start);
+        }
+    }
+
+    /**
+     * Shares one token stream per key while it is running
+     * @param query the user's prompt; compared after normalizing case and whitespace
+     * @param modelScope the model the quiz is for
+     * @param contextIds ids of the retrieved chunks, so the same prompt over different context is not shared
+     * @param generate starts the stream; only called by the leader
+     * @return the shared stream, replayed from its first token for late subscribers.
+     * It is cancelled upstream only once every subscriber has cancelled
+     */
+    public Flux<String> stream(String query, String modelScope, List<String> contextIds, Supplier<Flux<String>> generate) {
+        Key key = new Key(normalize(query), modelScope, contextIds);
+        return Flux.defer(() -> {
+            Flight<Flux<String>> flight = new Flight<>(new CompletableFuture<>());
+            Flight<Flux<String>> existing = streams.putIfAbsent(key, flight);
+            if (existing != null) {
+                existing.followers().incrementAndGet();
+                counter("stream", "follower").increment();
+                return await(existing);
+            }
+
+            counter("stream", "leader").increment();
+            long start = System.nanoTime();
+            // completed, failed, or every subscriber went away; later requests start a new flight
+            Runnable landing = () -> {
+                streams.remove(key, flight);
+                land("stream", flight, start);
+            };
+            try {
+                Flux<String> shared = generate.get()
+                        .doOnTerminate(landing) // before subscribers see the end, so none can join a finished stream
+                        .doOnCancel(landing)
+                        .replay()
+                        .refCount(1);
+                flight.result().complete(shared);
+                return shared;
+            } catch (RuntimeException e) {
+                landing.run();
+                flight.result().completeExceptionally(e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Waits for a flight as a follower. Unlike join(), the wait can be interrupted
+     * @throws CancellationException if interrupted; the interrupt flag is kept
+     */
+    private static <T> T await(Flight<T> flight) {
+        try {
+            return flight.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CancellationException cancelled = new CancellationException("Interrupted while waiting for a coalesced quiz");
+            cancelled.initCause(e);
+            throw cancelled;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new CompletionException(e.getCause());
+        }
+    }
+
+    private void land(String mode, Flight<?> flight, long start) {
+        Timer.builder("quiz.coalesce.window")
+                .tag("mode", mode)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("quiz.coalesce.followers")
+                .tag("mode", mode)
+                .register(meterRegistry)
+                .record(flight.followers().get());
+    }
+
+    private Counter counter(String mode, String role) {
+        return Counter.builder("quiz.coalesce.requests")
+                .tag("mode", mode)
+                .tag("role", role)
+                .register(meterRegistry);
+    }
+
+    private static String normalize(String query) {
+        String normalized = Normalizer.normalize(query == null ? "" : query, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").strip().toLowerCase(Locale.ROOT);
+    }
+
+    private record Key(String query, String modelScope, List<String> contextIds) {
+    }
+
+    private record Flight<T>(CompletableFuture<T> result, AtomicInteger followers) {
+        Flight(CompletableFuture<T> result) {
+            this(result, new AtomicInteger());
+        }
+    }
+}
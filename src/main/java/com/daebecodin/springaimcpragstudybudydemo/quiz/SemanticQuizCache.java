@@ -0,0 +1,130 @@
+package com.daebecodin.springaimcpragstudybudydemo.quiz;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers generated quizzes by the meaning of the prompt that produced them.
+ * A new prompt reuses a stored quiz when its embedding is within the cosine threshold of the
+ * stored prompt and retrieval returned exactly the same context chunks, so "quiz me on spring mvc"
+ * and "give me a spring mvc quiz" share one LLM call. Entries are kept per model and evicted
+ * least recently used first, or once they are older than max-age
+ */
+@Component
+public class SemanticQuizCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticQuizCache.class);
+
+    private final Map<String, Map<Long, Entry>> entriesByModel = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    @Value("${quiz.semantic-cache.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    @Value("${quiz.semantic-cache.max-entries-per-model:500}")
+    private int maxEntriesPerModel;
+
+    @Value("${quiz.semantic-cache.max-age:6h}")
+    private Duration maxAge;
+
+    /**
+     * Finds a stored quiz for a prompt that means the same thing and was answered from the same context
+     * @param model the model scope; quizzes are never shared between models
+     * @param promptEmbedding embedding of the new prompt
+     * @param context the chunks retrieval returned for the new prompt
+     * @return the closest stored quiz, if one is close enough
+     */
+    public Optional<String> lookup(String model, float[] promptEmbedding, List<Document> context) {
+        Map<Long, Entry> entries = entriesFor(model);
+        float[] normalized = normalize(promptEmbedding);
+        Set<String> contextIds = contextIds(context);
+        Instant oldest = Instant.now().minus(maxAge);
+
+        synchronized (entries) {
+            entries.values().removeIf(entry -> entry.createdAt().isBefore(oldest));
+
+            Long bestId = null;
+            double bestSimilarity = similarityThreshold;
+            for (Map.Entry<Long, Entry> candidate : entries.entrySet()) {
+                Entry entry = candidate.getValue();
+                if (!entry.contextIds().equals(contextIds)) {
+                    continue;
+                }
+                double similarity = dot(normalized, entry.promptEmbedding());
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    bestId = candidate.getKey();
+                }
+            }
+
+            if (bestId == null) {
+                return Optional.empty();
+            }
+            logger.debug("Semantic cache hit for model {} with similarity {}", model, bestSimilarity);
+            return Optional.of(entries.get(bestId).response()); // get marks it recently used
+        }
+    }
+
+    /**
+     * Stores a generated quiz
+     * @param model the model scope
+     * @param promptEmbedding embedding of the prompt
+     * @param context the chunks the quiz was generated from
+     * @param response the generated quiz
+     */
+    public void put(String model, float[] promptEmbedding, List<Document> context, String response) {
+        Map<Long, Entry> entries = entriesFor(model);
+        Entry entry = new Entry(normalize(promptEmbedding), contextIds(context), response, Instant.now());
+        synchronized (entries) {
+            entries.put(nextId.incrementAndGet(), entry);
+        }
+    }
+
+    private Map<Long, Entry> entriesFor(String model) {
+        return entriesByModel.computeIfAbsent(model, ignored -> new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxEntriesPerModel;
+            }
+        });
+    }
+
+    private static Set<String> contextIds(List<Document> context) {
+        return context.stream().map(Document::getId).collect(Collectors.toUnmodifiableSet());
+    }
+
+    // unit length vectors make cosine similarity a plain dot product
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = norm == 0 ? 0 : (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record Entry(float[] promptEmbedding, Set<String> contextIds, String response, Instant createdAt) {
+    }
+}
@@ -0,0 +1,275 @@
+package com.daebecodin.springaimcpragstudybudydemo.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the chunks a similarity search returned into the context that goes into the prompt.
+ * Chunks of the same file whose text overlaps (the end of one is the start of another) are merged
+ * into one passage with the repeated span kept once. A passage whose text is mostly contained in a
+ * higher ranked one (repeated headers, the same paragraph on two pages) is dropped. What is left is
+ * added in rank order while it fits the token budget.
+ * Every step is counted, so callers can report the tokens it saved
+ */
+@Component
+public class ContextPacker {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int SHINGLE_SIZE = 3;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final int minOverlapChars;
+    private final double duplicateThreshold;
+
+    /**
+     * @param minOverlapChars shortest end-to-start match treated as an overlap rather than a coincidence
+     * @param duplicateThreshold share of a passage's word triples found in a higher ranked passage for it to count as a duplicate
+     */
+    public ContextPacker(@Value("${rag.context.min-overlap-chars:40}") int minOverlapChars,
+                         @Value("${rag.context.duplicate-threshold:0.8}") double duplicateThreshold) {
+        this.minOverlapChars = minOverlapChars;
+        this.duplicateThreshold = duplicateThreshold;
+    }
+
+    /**
+     * @param retrieved search results, best first
+     * @param budgetTokens most tokens of context to return
+     * @return the packed passages, best first, and the tokens each step removed
+     */
+    public PackedContext pack(List<Document> retrieved, int budgetTokens) {
+        List<Passage> passages = new ArrayList<>();
+        for (int rank = 0; rank < retrieved.size(); rank++) {
+            Document document = retrieved.get(rank);
+            if (document.getText() != null && !document.getText().isBlank()) {
+                passages.add(new Passage(rank, document));
+            }
+        }
+        int retrievedTokens = tokens(passages);
+
+        mergeOverlaps(passages);
+        int mergedTokens = tokens(passages);
+
+        passages = dropDuplicates(passages);
+        int distinctTokens = tokens(passages);
+
+        List<Document> packed = new ArrayList<>();
+        int packedTokens = 0;
+        for (Passage passage : passages) {
+            int passageTokens = passage.tokens();
+            if (packedTokens + passageTokens <= budgetTokens) { // a long passage is skipped, a shorter one further down may still fit
+                packed.add(passage.toDocument());
+                packedTokens += passageTokens;
+            }
+        }
+
+        return new PackedContext(packed, retrievedTokens, packedTokens,
+                retrievedTokens - mergedTokens, mergedTokens - distinctTokens, distinctTokens - packedTokens);
+    }
+
+    /**
+     * Merges passages of the same file until no two overlap; the merged passage keeps the better rank
+     */
+    private void mergeOverlaps(List<Passage> passages) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            search:
+            for (Passage first : passages) {
+                for (Passage second : passages) {
+                    if (first == second || first.source == null || !first.source.equals(second.source)) {
+                        continue;
+                    }
+                    int overlap = overlap(first.text, second.text);
+                    if (overlap >= minOverlapChars) {
+                        first.append(second, overlap);
+                        passages.remove(second);
+                        merged = true;
+                        break search;
+                    }
+                }
+            }
+        }
+        passages.sort((a, b) -> Integer.compare(a.rank, b.rank));
+    }
+
+    /**
+     * Runs second's prefix function over the end of first, so a pair costs O(first + second) rather than
+     * a region compare for every candidate length. Merged passages grow, so the quadratic version added up
+     * @return length of the longest end of first that is also the start of second
+     */
+    static int overlap(String first, String second) {
+        int length = Math.min(first.length(), second.length());
+        if (length == 0) {
+            return 0;
+        }
+        int[] prefix = prefixFunction(second, length);
+        int matched = 0; // longest start of second that ends at the current character of first
+        for (int i = first.length() - length; i < first.length(); i++) {
+            char c = first.charAt(i);
+            while (matched > 0 && (matched == length || second.charAt(matched) != c)) {
+                matched = prefix[matched - 1];
+            }
+            if (second.charAt(matched) == c) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * @return for each i below length, the longest proper start of text[0..i] that is also its end
+     */
+    private static int[] prefixFunction(String text, int length) {
+        int[] prefix = new int[length];
+        for (int i = 1; i < length; i++) {
+            int k = prefix[i - 1];
+            while (k > 0 && text.charAt(i) != text.charAt(k)) {
+                k = prefix[k - 1];
+            }
+            if (text.charAt(i) == text.charAt(k)) {
+                k++;
+            }
+            prefix[i] = k;
+        }
+        return prefix;
+    }
+
+    /**
+     * Keeps passages in rank order, skipping any mostly contained in one already kept.
+     * When a kept passage is mostly contained in a later, longer one, the longer text takes its place
+     */
+    private List<Passage> dropDuplicates(List<Passage> passages) {
+        List<Passage> kept = new ArrayList<>();
+        Map<Passage, Set<String>> shingles = new HashMap<>();
+        candidates:
+        for (Passage candidate : passages) {
+            Set<String> candidateShingles = shingles.computeIfAbsent(candidate, passage -> shingles(passage.text));
+            for (int i = 0; i < kept.size(); i++) {
+                Passage existing = kept.get(i);
+                Set<String> existingShingles = shingles.get(existing);
+                if (containment(candidateShingles, existingShingles) >= duplicateThreshold) {
+                    continue candidates;
+                }
+                if (containment(existingShingles, candidateShingles) >= duplicateThreshold) {
+                    candidate.rank = existing.rank;
+                    kept.set(i, candidate);
+                    shingles.put(candidate, candidateShingles);
+                    continue candidates;
+                }
+            }
+            kept.add(candidate);
+        }
+        return kept;
+    }
+
+    /**
+     * @return the share of part's shingles that are also in whole
+     */
+    private static double containment(Set<String> part, Set<String> whole) {
+        if (part.isEmpty()) {
+            return 1;
+        }
+        int shared = 0;
+        for (String shingle : part) {
+            if (whole.contains(shingle)) {
+                shared++;
+            }
+        }
+        return (double) shared / part.size();
+    }
+
+    private static Set<String> shingles(String text) {
+        String[] words = NON_WORD.split(text.toLowerCase(Locale.ROOT).strip());
+        Set<String> shingles = new HashSet<>();
+        if (words.length < SHINGLE_SIZE) {
+            shingles.add(String.join(" ", words));
+            return shingles;
+        }
+        for (int i = 0; i + SHINGLE_SIZE <= words.length; i++) {
+            shingles.add(String.join(" ", List.of(words).subList(i, i + SHINGLE_SIZE)));
+        }
+        return shingles;
+    }
+
+    private int tokens(List<Passage> passages) {
+        return passages.stream().mapToInt(Passage::tokens).sum();
+    }
+
+    /**
+     * One or more chunks that end up as one block of context
+     */
+    private final class Passage {
+
+        private final String source;
+        private final Document first;
+        private final List<String> chunkIds = new ArrayList<>();
+        private String text;
+        private int rank;
+        private int tokens = -1;
+
+        Passage(int rank, Document document) {
+            this.rank = rank;
+            this.first = document;
+            this.source = Objects.toString(document.getMetadata().get("source_filename"), null);
+            this.text = document.getText().strip();
+            this.chunkIds.add(document.getId());
+        }
+
+        void append(Passage next, int overlap) {
+            text = text + next.text.substring(overlap);
+            rank = Math.min(rank, next.rank);
+            chunkIds.addAll(next.chunkIds);
+            tokens = -1;
+        }
+
+        int tokens() {
+            if (tokens < 0) {
+                tokens = tokenCountEstimator.estimate(text);
+            }
+            return tokens;
+        }
+
+        Document toDocument() {
+            if (chunkIds.size() == 1) {
+                return first;
+            }
+            Map<String, Object> metadata = new HashMap<>(first.getMetadata());
+            metadata.put("packed_chunk_ids", List.copyOf(chunkIds));
+            return Document.builder()
+                    .id(first.getId())
+                    .text(text)
+                    .metadata(metadata)
+                    .score(first.getScore())
+                    .build();
+        }
+    }
+
+    /**
+     * @param documents the passages to put in the prompt, best first
+     * @param retrievedTokens tokens in the chunks as retrieved
+     * @param packedTokens tokens in the passages returned
+     * @param overlapTokensSaved removed by merging overlapping chunks
+     * @param duplicateTokensSaved removed by dropping near-duplicates
+     * @param budgetTokensSaved left out because they did not fit the budget
+     */
+    public record PackedContext(List<Document> documents, int retrievedTokens, int packedTokens,
+                                int overlapTokensSaved, int duplicateTokensSaved, int budgetTokensSaved) {
+
+        public int tokensSaved() {
+            return retrievedTokens - packedTokens;
+        }
+    }
+}
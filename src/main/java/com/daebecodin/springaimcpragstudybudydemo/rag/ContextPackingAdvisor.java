@@ -0,0 +1,152 @@
+package com.daebecodin.springaimcpragstudybudydemo.rag;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.AdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Retrieval advisor used in place of QuestionAnswerAdvisor.
+ * It runs the same search and fills the same prompt, but the retrieved chunks go through the ContextPacker first,
+ * so overlapping and duplicated text is sent once and the context fits the model's budget.
+ * The tokens saved are recorded per model and returned in the response metadata under TOKENS_SAVED
+ */
+public class ContextPackingAdvisor implements BaseAdvisor {
+
+    public static final String TOKENS_SAVED = "rag_context_tokens_saved";
+
+    // advisor param for requests that bring their own context, such as quiz bank generation
+    public static final String SKIP_RETRIEVAL = "rag_context_skip_retrieval";
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextPackingAdvisor.class);
+
+    // QuestionAnswerAdvisor's default prompt, so answers read the same as before
+    private static final PromptTemplate PROMPT_TEMPLATE = new PromptTemplate("""
+            {query}
+
+            Context information is below, surrounded by ---------------------
+
+            ---------------------
+            {question_answer_context}
+            ---------------------
+
+            Given the context and provided history information and not prior knowledge,
+            reply to the user comment. If the answer is not in the context, inform
+            the user that you can't answer the question.
+            """);
+
+    private final VectorStore vectorStore;
+    private final ContextPacker contextPacker;
+    private final String model;
+    private final int budgetTokens;
+    private final DistributionSummary retrievedTokens;
+    private final DistributionSummary packedTokens;
+    private final Counter overlapSaved;
+    private final Counter duplicateSaved;
+    private final Counter budgetSaved;
+
+    /**
+     * @param vectorStore searched with the user's message; the same default request as QuestionAnswerAdvisor, so results come from the retrieval cache
+     * @param contextPacker merges, de-duplicates and budgets the results
+     * @param model tags the metrics
+     * @param budgetTokens most tokens of context this model gets
+     * @param meterRegistry receives rag.context.tokens and rag.context.tokens.saved
+     */
+    public ContextPackingAdvisor(VectorStore vectorStore, ContextPacker contextPacker, String model, int budgetTokens,
+                                 MeterRegistry meterRegistry) {
+        this.vectorStore = vectorStore;
+        this.contextPacker = contextPacker;
+        this.model = model;
+        this.budgetTokens = budgetTokens;
+        this.retrievedTokens = tokens(meterRegistry, "retrieved");
+        this.packedTokens = tokens(meterRegistry, "packed");
+        this.overlapSaved = saved(meterRegistry, "overlap");
+        this.duplicateSaved = saved(meterRegistry, "duplicate");
+        this.budgetSaved = saved(meterRegistry, "budget");
+    }
+
+    @Override
+    public ChatClientRequest before(ChatClientRequest request, AdvisorChain chain) {
+        if (Boolean.TRUE.equals(request.context().get(SKIP_RETRIEVAL))) {
+            return request;
+        }
+        String query = request.prompt().getUserMessage().getText();
+        List<Document> retrieved = Optional.ofNullable(vectorStore.similaritySearch(SearchRequest.builder()
+                        .query(query)
+                        .build()))
+                .orElse(List.of());
+
+        ContextPacker.PackedContext packed = contextPacker.pack(retrieved, budgetTokens);
+        retrievedTokens.record(packed.retrievedTokens());
+        packedTokens.record(packed.packedTokens());
+        overlapSaved.increment(packed.overlapTokensSaved());
+        duplicateSaved.increment(packed.duplicateTokensSaved());
+        budgetSaved.increment(packed.budgetTokensSaved());
+        logger.debug("Packed {} chunks into {} passages for {}: {} -> {} tokens",
+                retrieved.size(), packed.documents().size(), model, packed.retrievedTokens(), packed.packedTokens());
+
+        String context = packed.documents().stream()
+                .map(Document::getText)
+                .collect(Collectors.joining(System.lineSeparator() + System.lineSeparator()));
+        Map<String, Object> advisorContext = new HashMap<>(request.context());
+        advisorContext.put(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, packed.documents());
+        advisorContext.put(TOKENS_SAVED, packed.tokensSaved());
+
+        return request.mutate()
+                .prompt(request.prompt().augmentUserMessage(PROMPT_TEMPLATE.render(Map.of(
+                        "query", query,
+                        "question_answer_context", context))))
+                .context(advisorContext)
+                .build();
+    }
+
+    @Override
+    public ChatClientResponse after(ChatClientResponse response, AdvisorChain chain) {
+        if (!response.context().containsKey(TOKENS_SAVED)) {
+            return response; // retrieval was skipped
+        }
+        ChatResponse.Builder chatResponse = response.chatResponse() == null
+                ? ChatResponse.builder()
+                : ChatResponse.builder().from(response.chatResponse());
+        chatResponse.metadata(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, response.context().get(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS));
+        chatResponse.metadata(TOKENS_SAVED, response.context().get(TOKENS_SAVED));
+        return response.mutate().chatResponse(chatResponse.build()).build();
+    }
+
+    @Override
+    public int getOrder() {
+        return 0; // where QuestionAnswerAdvisor ran: after chat memory, before the model call
+    }
+
+    private DistributionSummary tokens(MeterRegistry meterRegistry, String stage) {
+        return DistributionSummary.builder("rag.context.tokens")
+                .tag("model", model)
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter saved(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("rag.context.tokens.saved")
+                .tag("model", model)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,151 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.context.ApplicationListener;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * VectorStore decorator that remembers similarity search results.
+ * Students send the same few prompts over and over, so a repeated search skips both the
+ * query embedding and the pgvector round-trip. Entries are keyed by the normalized query,
+ * topK, similarity threshold and filter, expire after a TTL, and are all dropped whenever
+ * the underlying table changes.
+ * Every search is timed as vector.search, tagged with whether the cache answered it
+ */
+public class CachingVectorStore implements VectorStore, ApplicationListener<VectorStoreChangedEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingVectorStore.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final VectorStore delegate;
+    private final Cache<SearchKey, List<Document>> results;
+    private final Timer hitTimer;
+    private final Timer missTimer;
+
+    /**
+     * @param delegate the store that actually runs the search
+     * @param ttl how long a result stays cached
+     * @param maxEntries how many distinct searches are kept
+     * @param meterRegistry receives the search timers
+     */
+    public CachingVectorStore(VectorStore delegate, Duration ttl, long maxEntries, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.results = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxEntries)
+                .build();
+        this.hitTimer = searchTimer(meterRegistry, "hit");
+        this.missTimer = searchTimer(meterRegistry, "miss");
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        invalidate();
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        invalidate();
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        invalidate();
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        SearchKey key = new SearchKey(normalize(request.getQuery()), request.getTopK(),
+                request.getSimilarityThreshold(), String.valueOf(request.getFilterExpression()));
+        long start = System.nanoTime();
+        List<Document> cached = results.getIfPresent(key);
+        if (cached != null) {
+            hitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return copyOf(cached);
+        }
+        List<Document> found = results.get(key, ignored -> copyOf(delegate.similaritySearch(request)));
+        missTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return copyOf(found);
+    }
+
+    /**
+     * Callers add metadata to the documents they get back (the context packer and the advisors do),
+     * so the cache keeps its own copies and every caller gets fresh ones
+     */
+    private static List<Document> copyOf(List<Document> documents) {
+        return documents.stream().map(CachingVectorStore::copyOf).toList();
+    }
+
+    private static Document copyOf(Document document) {
+        Document.Builder copy = Document.builder()
+                .id(document.getId())
+                .metadata(new HashMap<>(document.getMetadata()))
+                .score(document.getScore());
+        if (document.getMedia() != null) {
+            copy.media(document.getMedia());
+        } else {
+            copy.text(document.getText());
+        }
+        return copy.build();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public <T> Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+
+    /**
+     * Drops every cached result when ingestion writes to the table directly
+     */
+    @Override
+    public void onApplicationEvent(VectorStoreChangedEvent event) {
+        logger.debug("Vector store changed for {}; clearing cached searches", event.getSourceFilename());
+        invalidate();
+    }
+
+    public void invalidate() {
+        results.invalidateAll();
+    }
+
+    private Timer searchTimer(MeterRegistry meterRegistry, String cache) {
+        return Timer.builder("vector.search")
+                .description("Similarity searches, including the query embedding on a miss")
+                .tag("cache", cache)
+                .tag("store", delegate.getName())
+                .register(meterRegistry);
+    }
+
+    private static String normalize(String query) {
+        String normalized = Normalizer.normalize(query == null ? "" : query, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").strip().toLowerCase(Locale.ROOT);
+    }
+
+    private record SearchKey(String query, int topK, double similarityThreshold, String filter) {
+    }
+}
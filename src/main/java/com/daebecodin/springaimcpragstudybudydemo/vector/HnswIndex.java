@@ -0,0 +1,306 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+/**
+ * Hierarchical navigable small world graph over unit-length vectors, so cosine similarity is a dot product.
+ * Vectors live in one contiguous float[] arena (node i at i * dimensions) to keep distance loops cache friendly.
+ * Removed nodes are tombstoned and skipped in results but still used for navigation until the index is compacted.
+ * Not thread safe; HnswVectorStore guards it
+ */
+final class HnswIndex {
+
+    private static final Comparator<Candidate> BY_SIMILARITY = Comparator.comparingDouble(Candidate::similarity);
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private float[] arena;
+    private int[][][] links; // links[node][level] = neighbor nodes
+    private Document[] documents;
+    private final Map<String, Integer> nodeById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(int dimensions, int m, int efConstruction, int initialCapacity) {
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        int capacity = Math.max(16, initialCapacity);
+        this.arena = new float[capacity * dimensions];
+        this.links = new int[capacity][][];
+        this.documents = new Document[capacity];
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @return nodes that are not tombstoned
+     */
+    int liveCount() {
+        return nodeById.size();
+    }
+
+    int tombstoneCount() {
+        return deleted.cardinality();
+    }
+
+    /**
+     * Inserts a document; an existing document with the same id is replaced
+     * @param document id, text and metadata; returned as is from searches
+     * @param vector its embedding, any length; normalized on the way in
+     */
+    void add(Document document, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        remove(document.getId());
+        ensureCapacity(size + 1);
+
+        int node = size++;
+        System.arraycopy(normalize(vector), 0, arena, node * dimensions, dimensions);
+        documents[node] = document;
+        nodeById.put(document.getId(), node);
+
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        links[node] = new int[level + 1][];
+        Arrays.fill(links[node], new int[0]);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(node * dimensions, arena, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(arena, node * dimensions, current, efConstruction, l);
+            int maxLinks = l == 0 ? maxM0 : m;
+            int[] neighbors = candidates.stream().limit(maxLinks).mapToInt(Candidate::node).toArray();
+            links[node][l] = neighbors;
+            for (int neighbor : neighbors) {
+                connect(neighbor, node, l, maxLinks);
+            }
+            current = candidates.getFirst().node();
+        }
+
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * Tombstones a document
+     * @return false if the id was not indexed
+     */
+    boolean remove(String id) {
+        Integer node = nodeById.remove(id);
+        if (node == null) {
+            return false;
+        }
+        deleted.set(node);
+        return true;
+    }
+
+    /**
+     * @return ids of live documents matching the predicate
+     */
+    List<String> idsWhere(Predicate<Document> predicate) {
+        List<String> matching = new ArrayList<>();
+        nodeById.forEach((id, node) -> {
+            if (predicate.test(documents[node])) {
+                matching.add(id);
+            }
+        });
+        return matching;
+    }
+
+    /**
+     * Approximate nearest neighbours of a query
+     * @param query the query embedding; normalized here
+     * @param k results wanted
+     * @param ef candidate list size; larger is slower and more accurate
+     * @return up to k live documents with their cosine similarity, most similar first
+     */
+    List<Hit> search(float[] query, int k, int ef) {
+        if (entryPoint < 0 || nodeById.isEmpty()) {
+            return List.of();
+        }
+        float[] normalized = normalize(query);
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(0, normalized, current, l);
+        }
+
+        List<Hit> hits = new ArrayList<>(k);
+        for (Candidate candidate : searchLayer(normalized, 0, current, Math.max(ef, k), 0)) {
+            if (!deleted.get(candidate.node())) {
+                hits.add(new Hit(documents[candidate.node()], candidate.similarity()));
+                if (hits.size() == k) {
+                    break;
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Rebuilds the graph from live nodes only, dropping tombstones
+     */
+    HnswIndex compacted() {
+        HnswIndex compacted = new HnswIndex(dimensions, m, efConstruction, liveCount());
+        for (int node = 0; node < size; node++) {
+            if (!deleted.get(node)) {
+                compacted.add(documents[node], Arrays.copyOfRange(arena, node * dimensions, (node + 1) * dimensions));
+            }
+        }
+        return compacted;
+    }
+
+    private int greedyClosest(int queryOffset, float[] queryArray, int start, int level) {
+        int current = start;
+        float best = dot(queryArray, queryOffset, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : neighborsAt(current, level)) {
+                float similarity = dot(queryArray, queryOffset, neighbor);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer
+     * @return up to ef nodes, most similar first
+     */
+    private List<Candidate> searchLayer(float[] queryArray, int queryOffset, int start, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        PriorityQueue<Candidate> found = new PriorityQueue<>(BY_SIMILARITY); // worst on top
+
+        Candidate first = new Candidate(start, dot(queryArray, queryOffset, start));
+        visited.set(start);
+        toVisit.add(first);
+        found.add(first);
+
+        while (!toVisit.isEmpty()) {
+            Candidate candidate = toVisit.poll();
+            if (found.size() >= ef && candidate.similarity() < found.peek().similarity()) {
+                break; // nothing left can improve the result
+            }
+            for (int neighbor : neighborsAt(candidate.node(), level)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float similarity = dot(queryArray, queryOffset, neighbor);
+                if (found.size() < ef || similarity > found.peek().similarity()) {
+                    Candidate next = new Candidate(neighbor, similarity);
+                    toVisit.add(next);
+                    found.add(next);
+                    if (found.size() > ef) {
+                        found.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> ordered = new ArrayList<>(found);
+        ordered.sort(BY_SIMILARITY.reversed());
+        return ordered;
+    }
+
+    // adds a back link, keeping only the neighbor's closest maxLinks links
+    private void connect(int node, int neighbor, int level, int maxLinks) {
+        int[] current = links[node][level];
+        int[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = neighbor;
+        if (updated.length > maxLinks) {
+            int base = node * dimensions;
+            updated = Arrays.stream(updated).boxed()
+                    .sorted(Comparator.comparingDouble((Integer n) -> dot(arena, base, n)).reversed())
+                    .limit(maxLinks)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        links[node][level] = updated;
+    }
+
+    private int[] neighborsAt(int node, int level) {
+        int[][] nodeLinks = links[node];
+        return level < nodeLinks.length ? nodeLinks[level] : new int[0];
+    }
+
+    private float dot(float[] queryArray, int queryOffset, int node) {
+        int offset = node * dimensions;
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += queryArray[queryOffset + i] * arena[offset + i];
+        }
+        return sum;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= documents.length) {
+            return;
+        }
+        int capacity = Math.max(needed, documents.length * 2);
+        arena = Arrays.copyOf(arena, capacity * dimensions);
+        links = Arrays.copyOf(links, capacity);
+        documents = Arrays.copyOf(documents, capacity);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = norm == 0 ? 0 : (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private record Candidate(int node, float similarity) {
+    }
+
+    /**
+     * @param document the indexed document
+     * @param similarity cosine similarity to the query
+     */
+    record Hit(Document document, float similarity) {
+    }
+}
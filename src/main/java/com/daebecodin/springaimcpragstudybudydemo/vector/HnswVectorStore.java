@@ -0,0 +1,277 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-process read replica of the pgvector table.
+ * Every row is mirrored into an HnswIndex at startup and kept in sync from VectorStoreChangedEvent,
+ * so similarity searches run in memory instead of going to Postgres. Postgres stays the source of truth:
+ * writes go to the delegate first and the replica re-reads what changed. Searches with a filter
+ * expression, or made before the replica is warm, are passed to the delegate
+ */
+public class HnswVectorStore implements VectorStore, ApplicationListener<VectorStoreChangedEvent>, SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(HnswVectorStore.class);
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    // compact once this share of the graph is tombstones
+    private static final double MAX_TOMBSTONE_RATIO = 0.25;
+
+    private final VectorStore delegate;
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final String table;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final Object syncLock = new Object(); // one reload or resync at a time
+    private HnswIndex index; // guarded by indexLock
+    private volatile boolean warm;
+
+    /**
+     * @param delegate the pgvector store; receives all writes and filtered searches
+     * @param jdbcTemplate reads rows back from the vector table
+     * @param embeddingModel embeds queries
+     * @param objectMapper reads the metadata column
+     * @param table schema qualified vector table
+     * @param m graph links per node
+     * @param efConstruction candidate list size while building
+     * @param efSearch candidate list size while searching
+     */
+    public HnswVectorStore(VectorStore delegate, JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel,
+                           ObjectMapper objectMapper, String table, int m, int efConstruction, int efSearch) {
+        this.delegate = delegate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.table = table;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Warms the replica once every bean is ready
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    /**
+     * Rebuilds the replica from the whole table; searches keep using the old index until the new one is swapped in
+     */
+    public void reload() {
+        synchronized (syncLock) {
+            long start = System.nanoTime();
+            try {
+                List<Row> rows = jdbcTemplate.query("SELECT id, content, metadata::text AS metadata, embedding::text AS embedding FROM " + table,
+                        (rs, rowNum) -> toRow(rs));
+                HnswIndex rebuilt = rows.isEmpty() ? null : new HnswIndex(rows.getFirst().vector().length, m, efConstruction, rows.size());
+                rows.forEach(row -> rebuilt.add(row.document(), row.vector()));
+                swap(rebuilt);
+                warm = true;
+                logger.info("Warmed in-process vector replica with {} vectors in {} ms", rows.size(), (System.nanoTime() - start) / 1_000_000);
+            } catch (DataAccessException e) {
+                logger.warn("Could not warm the in-process vector replica; searches go to Postgres: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        resyncIds(documents.stream().map(Document::getId).toList());
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        withWriteLock(0, index -> idList.forEach(index::remove));
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        reload(); // the filter is evaluated by Postgres; re-read rather than re-implement it
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (!warm || request.hasFilterExpression()) {
+            return delegate.similaritySearch(request);
+        }
+        float[] query = embeddingModel.embed(request.getQuery());
+
+        List<HnswIndex.Hit> hits;
+        indexLock.readLock().lock();
+        try {
+            if (index == null) {
+                return List.of();
+            }
+            if (query.length != index.dimensions()) {
+                return delegate.similaritySearch(request);
+            }
+            hits = index.search(query, request.getTopK(), Math.max(efSearch, request.getTopK()));
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        List<Document> results = new ArrayList<>(hits.size());
+        for (HnswIndex.Hit hit : hits) {
+            if (hit.similarity() < request.getSimilarityThreshold()) {
+                break;
+            }
+            // same shape as PgVectorStore results: score is the similarity, distance goes in the metadata
+            Map<String, Object> metadata = new HashMap<>(hit.document().getMetadata());
+            metadata.put("distance", 1 - hit.similarity());
+            results.add(Document.builder()
+                    .id(hit.document().getId())
+                    .text(hit.document().getText())
+                    .metadata(metadata)
+                    .score((double) hit.similarity())
+                    .build());
+        }
+        return results;
+    }
+
+    @Override
+    public String getName() {
+        return "HnswVectorStore";
+    }
+
+    @Override
+    public <T> Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+
+    /**
+     * Re-reads the chunks of the document that changed; a change without a document reloads everything
+     */
+    @Override
+    public void onApplicationEvent(VectorStoreChangedEvent event) {
+        if (!warm) {
+            return; // the warm-up reads the table after this change anyway
+        }
+        if (event.getSourceFilename() == null) {
+            reload();
+        } else {
+            resyncSource(event.getSourceFilename());
+        }
+    }
+
+    private void resyncSource(String sourceFilename) {
+        synchronized (syncLock) {
+            List<Row> rows = jdbcTemplate.query(
+                    "SELECT id, content, metadata::text AS metadata, embedding::text AS embedding FROM " + table
+                            + " WHERE metadata->>'source_filename' = ?",
+                    (rs, rowNum) -> toRow(rs), sourceFilename);
+            withWriteLock(dimensionsOf(rows), index -> {
+                index.idsWhere(document -> sourceFilename.equals(document.getMetadata().get("source_filename")))
+                        .forEach(index::remove);
+                rows.forEach(row -> index.add(row.document(), row.vector()));
+            });
+            logger.debug("Resynced {} chunks of {} into the in-process replica", rows.size(), sourceFilename);
+        }
+    }
+
+    private void resyncIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        synchronized (syncLock) {
+            List<Row> rows = jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(
+                        "SELECT id, content, metadata::text AS metadata, embedding::text AS embedding FROM " + table + " WHERE id = ANY (?)");
+                ps.setArray(1, connection.createArrayOf("uuid", ids.stream().map(UUID::fromString).toArray()));
+                return ps;
+            }, (rs, rowNum) -> toRow(rs));
+            withWriteLock(dimensionsOf(rows), index -> rows.forEach(row -> index.add(row.document(), row.vector())));
+        }
+    }
+
+    /**
+     * Applies a change to the live index, creating it for the first rows and compacting it when tombstones pile up
+     * @param dimensions size of the vectors being added; 0 when nothing is added
+     */
+    private void withWriteLock(int dimensions, Consumer<HnswIndex> change) {
+        indexLock.writeLock().lock();
+        try {
+            if (index == null) {
+                if (dimensions == 0) {
+                    return; // nothing indexed yet, nothing to remove
+                }
+                index = new HnswIndex(dimensions, m, efConstruction, 0);
+            }
+            change.accept(index);
+            if (index.tombstoneCount() > (index.liveCount() + index.tombstoneCount()) * MAX_TOMBSTONE_RATIO) {
+                index = index.compacted();
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private static int dimensionsOf(List<Row> rows) {
+        return rows.isEmpty() ? 0 : rows.getFirst().vector().length;
+    }
+
+    private void swap(HnswIndex rebuilt) {
+        indexLock.writeLock().lock();
+        try {
+            index = rebuilt;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private Row toRow(ResultSet rs) throws SQLException {
+        try {
+            Map<String, Object> metadata = objectMapper.readValue(Objects.requireNonNullElse(rs.getString("metadata"), "{}"), METADATA_TYPE);
+            Document document = Document.builder()
+                    .id(rs.getObject("id", UUID.class).toString())
+                    .text(rs.getString("content"))
+                    .metadata(metadata)
+                    .build();
+            return new Row(document, new PGvector(rs.getString("embedding")).toArray());
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Unreadable metadata for vector row " + rs.getString("id"), e);
+        }
+    }
+
+    private record Row(Document document, float[] vector) {
+    }
+}
@@ -0,0 +1,264 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Similarity search over quantized indexes with exact re-ranking.
+ * The mode's index (halfvec or binary) returns topK * oversample candidates, which are then
+ * ordered by full precision cosine distance so the answer matches a float32 search as closely as possible.
+ * Also creates the quantized expression index at startup; existing rows are indexed in place,
+ * so an existing vector_store table migrates without rewriting it. Once that index is valid the float32 HNSW index
+ * is dropped, so switching modes shrinks index memory instead of adding a second graph next to the first.
+ * Depends on pgVectorStore so the table exists before the index is built
+ */
+@Component
+@DependsOn({"databaseInitializer", "pgVectorStore"})
+public class QuantizedSearch {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuantizedSearch.class);
+
+    // pgvector rejects a larger hnsw.ef_search
+    private static final int MAX_EF_SEARCH = 1000;
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${spring.ai.vectorstore.pgvector.schema-name:public}")
+    private String schemaName;
+
+    @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}")
+    private String tableName;
+
+    @Value("${spring.ai.vectorstore.pgvector.dimensions:1024}")
+    private int dimensions;
+
+    @Value("${vector.storage.mode:FULL}")
+    private VectorStorageMode mode;
+
+    @Value("${vector.storage.oversample:4}")
+    private int oversample;
+
+    @Value("${vector.storage.drop-unused-indexes:true}")
+    private boolean dropUnusedIndexes;
+
+    public QuantizedSearch(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Builds the index for the configured mode if it does not exist yet, then drops the similarity indexes it replaces.
+     * CONCURRENTLY keeps ingestion writing while a large table is indexed; nothing is dropped until the new index is valid
+     */
+    @PostConstruct
+    void migrate() {
+        if (mode != VectorStorageMode.FULL) {
+            try {
+                createIndex(mode);
+            } catch (Exception e) {
+                logger.error("Could not create the {} index; keeping the existing indexes: {}", mode, e.getMessage());
+                return;
+            }
+        }
+        if (dropUnusedIndexes) {
+            dropIndexesOtherThan(mode);
+        }
+    }
+
+    /**
+     * Creates the expression index for a quantized mode.
+     * A CONCURRENTLY build that was interrupted leaves an invalid index behind, which IF NOT EXISTS would keep forever;
+     * that one is dropped and built again
+     * @param storageMode HALFVEC or BINARY
+     */
+    public void createIndex(VectorStorageMode storageMode) {
+        String ddl = storageMode.createIndex(table(), indexName(storageMode), dimensions);
+        if (ddl == null) {
+            return;
+        }
+        if (Boolean.FALSE.equals(isValid(indexName(storageMode)))) {
+            logger.warn("{} index on {} is invalid, rebuilding it", storageMode, table());
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + schemaName + "." + indexName(storageMode));
+        }
+        long start = System.nanoTime();
+        jdbcTemplate.execute(ddl);
+        logger.info("{} index ready on {} after {} ms", storageMode, table(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Drops every similarity index except the one the given mode searches, once that one is valid.
+     * For FULL that is the float32 index PgVectorStore creates; without it nothing is dropped
+     */
+    private void dropIndexesOtherThan(VectorStorageMode kept) {
+        String keptIndex = kept == VectorStorageMode.FULL ? fullIndexName() : indexName(kept);
+        if (keptIndex == null || !Boolean.TRUE.equals(isValid(keptIndex))) {
+            logger.warn("The {} index on {} is missing or not valid yet; keeping the other indexes", kept, table());
+            return;
+        }
+        for (VectorStorageMode other : VectorStorageMode.values()) {
+            String indexName = other == VectorStorageMode.FULL ? fullIndexName() : indexName(other);
+            if (other == kept || indexName == null || isValid(indexName) == null) {
+                continue;
+            }
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + schemaName + "." + indexName);
+            logger.info("Dropped the {} index {}; {} now serves similarity search on {}", other, indexName, kept, table());
+        }
+    }
+
+    /**
+     * @return whether the index can be used, or null if it does not exist
+     */
+    private Boolean isValid(String indexName) {
+        List<Boolean> valid = jdbcTemplate.queryForList("SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)",
+                Boolean.class, schemaName + "." + indexName);
+        return valid.isEmpty() ? null : valid.getFirst();
+    }
+
+    /**
+     * @return the configured storage mode
+     */
+    public VectorStorageMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Searches with the configured mode
+     */
+    public List<Document> search(float[] query, int topK, double similarityThreshold) {
+        return search(mode, query, topK, similarityThreshold);
+    }
+
+    /**
+     * Searches the mode's index for topK * oversample candidates and re-ranks them by exact cosine distance.
+     * The candidate list is capped at 1000, the largest ef_search pgvector accepts, so oversampling stops helping
+     * once topK * oversample passes it and recall drops back towards the quantized index's own
+     * @param storageMode which index to search
+     * @param query the query embedding
+     * @param topK results wanted
+     * @param similarityThreshold minimum cosine similarity, 0 to accept all
+     * @return at most topK documents, most similar first, shaped like PgVectorStore results
+     */
+    public List<Document> search(VectorStorageMode storageMode, float[] query, int topK, double similarityThreshold) {
+        int candidates = storageMode == VectorStorageMode.FULL ? topK
+                : (int) Math.min((long) topK * oversample, Math.max(topK, MAX_EF_SEARCH));
+        PGvector vector = new PGvector(query);
+        // the index only picks candidates; the re-rank reads each candidate's full precision embedding from the table row
+        String sql = "SELECT id, content, metadata::text AS metadata, embedding <=> ? AS distance FROM ("
+                + "SELECT id, content, metadata, embedding FROM " + table()
+                + " ORDER BY " + storageMode.distance(dimensions) + " LIMIT ?"
+                + ") candidates WHERE 1 - (embedding <=> ?) >= ? ORDER BY embedding <=> ? LIMIT ?";
+
+        return transactionTemplate.execute(status -> {
+            // HNSW returns at most ef_search rows, so it must cover the oversampled candidate list as far as pgvector allows
+            jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + Math.min(MAX_EF_SEARCH, Math.max(40, candidates)));
+            return jdbcTemplate.query(sql, (rs, rowNum) -> toDocument(rs),
+                    vector, vector, candidates, vector, similarityThreshold, vector, topK);
+        });
+    }
+
+    /**
+     * Exact nearest neighbours by sequential scan; the baseline recall is measured against
+     * @param query the query embedding
+     * @param topK results wanted
+     * @return ids of the topK closest chunks
+     */
+    public List<String> exactSearch(float[] query, int topK) {
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+            jdbcTemplate.execute("SET LOCAL enable_bitmapscan = off");
+            return jdbcTemplate.query("SELECT id FROM " + table() + " ORDER BY embedding <=> ? LIMIT ?",
+                    (rs, rowNum) -> rs.getObject("id", UUID.class).toString(), new PGvector(query), topK);
+        });
+    }
+
+    /**
+     * Random stored embeddings, used as queries by the storage report so it makes no embedding calls
+     * @param count how many to sample
+     */
+    public List<float[]> sampleEmbeddings(int count) {
+        return jdbcTemplate.query("SELECT embedding::text AS embedding FROM " + table() + " ORDER BY random() LIMIT ?",
+                (rs, rowNum) -> new PGvector(rs.getString("embedding")).toArray(), count);
+    }
+
+    /**
+     * Size on disk of the index a mode searches
+     * @return bytes, or -1 if the index does not exist
+     */
+    public long indexSize(VectorStorageMode storageMode) {
+        String indexName = storageMode == VectorStorageMode.FULL ? fullIndexName() : indexName(storageMode);
+        if (indexName == null) {
+            return -1;
+        }
+        Long size = jdbcTemplate.queryForObject("SELECT pg_relation_size(to_regclass(?))", Long.class, schemaName + "." + indexName);
+        return Objects.requireNonNullElse(size, -1L);
+    }
+
+    /**
+     * Size on disk of every index on the vector table: similarity indexes of all modes, primary key and the rest
+     * @return bytes, or -1 if the table does not exist
+     */
+    public long totalIndexSize() {
+        Long size = jdbcTemplate.queryForObject("SELECT pg_indexes_size(to_regclass(?))", Long.class, table());
+        return Objects.requireNonNullElse(size, -1L);
+    }
+
+    // the float32 index is created by PgVectorStore under its own name
+    private String fullIndexName() {
+        List<String> names = jdbcTemplate.queryForList(
+                "SELECT indexname FROM pg_indexes WHERE schemaname = ? AND tablename = ? AND indexdef LIKE '%USING hnsw (embedding %'",
+                String.class, schemaName, tableName);
+        return names.isEmpty() ? null : names.getFirst();
+    }
+
+    private String indexName(VectorStorageMode storageMode) {
+        return tableName + "_embedding_" + storageMode.name().toLowerCase() + "_idx";
+    }
+
+    private String table() {
+        return schemaName + "." + tableName;
+    }
+
+    private Document toDocument(ResultSet rs) throws SQLException {
+        try {
+            Map<String, Object> metadata = new HashMap<>(objectMapper.readValue(
+                    Objects.requireNonNullElse(rs.getString("metadata"), "{}"), METADATA_TYPE));
+            double distance = rs.getDouble("distance");
+            metadata.put("distance", distance);
+            return Document.builder()
+                    .id(rs.getObject("id", UUID.class).toString())
+                    .text(rs.getString("content"))
+                    .metadata(metadata)
+                    .score(1 - distance)
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Unreadable metadata for vector row " + rs.getString("id"), e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * VectorStore that searches a halfvec or binary quantized index and re-ranks exactly (see QuantizedSearch).
+ * Writes and searches with a filter expression go to the delegate unchanged
+ */
+public class QuantizedVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+    private final QuantizedSearch quantizedSearch;
+    private final EmbeddingModel embeddingModel;
+
+    /**
+     * @param delegate the pgvector store
+     * @param quantizedSearch runs the oversampled search and re-rank
+     * @param embeddingModel embeds queries
+     */
+    public QuantizedVectorStore(VectorStore delegate, QuantizedSearch quantizedSearch, EmbeddingModel embeddingModel) {
+        this.delegate = delegate;
+        this.quantizedSearch = quantizedSearch;
+        this.embeddingModel = embeddingModel;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (request.hasFilterExpression()) {
+            return delegate.similaritySearch(request);
+        }
+        float[] query = embeddingModel.embed(request.getQuery());
+        return quantizedSearch.search(query, request.getTopK(), request.getSimilarityThreshold());
+    }
+
+    @Override
+    public String getName() {
+        return "QuantizedVectorStore";
+    }
+
+    @Override
+    public <T> Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+}
@@ -0,0 +1,52 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+/**
+ * How the vector table is indexed for similarity search.
+ * The embedding column always keeps full float32 vectors; the quantized modes replace the float32 HNSW index
+ * with one on an expression over that column, search it for extra candidates and re-rank them exactly
+ */
+public enum VectorStorageMode {
+
+    /**
+     * float32 HNSW index, 4 bytes per dimension
+     */
+    FULL,
+
+    /**
+     * float16 HNSW index on embedding::halfvec, 2 bytes per dimension
+     */
+    HALFVEC,
+
+    /**
+     * 1 bit per dimension HNSW index on binary_quantize(embedding), compared by Hamming distance
+     */
+    BINARY;
+
+    /**
+     * @param dimensions the embedding size
+     * @return ORDER BY expression that the mode's index serves; the query vector is the single parameter
+     */
+    String distance(int dimensions) {
+        return switch (this) {
+            case FULL -> "embedding <=> ?";
+            case HALFVEC -> "embedding::halfvec(%d) <=> ?::halfvec(%d)".formatted(dimensions, dimensions);
+            case BINARY -> "binary_quantize(embedding)::bit(%d) <~> binary_quantize(?::vector)".formatted(dimensions);
+        };
+    }
+
+    /**
+     * @param table the vector table
+     * @param indexName name of the index to create
+     * @param dimensions the embedding size
+     * @return the CREATE INDEX statement for the mode, or null for FULL, whose index belongs to PgVectorStore
+     */
+    String createIndex(String table, String indexName, int dimensions) {
+        return switch (this) {
+            case FULL -> null;
+            case HALFVEC -> "CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON %s USING hnsw ((embedding::halfvec(%d)) halfvec_cosine_ops)"
+                    .formatted(indexName, table, dimensions);
+            case BINARY -> "CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON %s USING hnsw ((binary_quantize(embedding)::bit(%d)) bit_hamming_ops)"
+                    .formatted(indexName, table, dimensions);
+        };
+    }
+}
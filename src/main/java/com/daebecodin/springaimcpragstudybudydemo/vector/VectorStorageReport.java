@@ -0,0 +1,88 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures what each storage mode costs and how much it loses.
+ * Stored embeddings are sampled as queries; every mode's results are compared with an exact
+ * sequential scan for recall@k and timed for latency, alongside each index's size on disk.
+ * The total covers every index on the table, which is what Postgres has to keep in memory to search quickly
+ */
+@Component
+public class VectorStorageReport {
+
+    private final QuantizedSearch quantizedSearch;
+
+    public VectorStorageReport(QuantizedSearch quantizedSearch) {
+        this.quantizedSearch = quantizedSearch;
+    }
+
+    /**
+     * @param samples how many stored embeddings to use as queries
+     * @param topK results compared per query
+     * @return the active mode, the table's total index size and one row per storage mode
+     */
+    public Report run(int samples, int topK) {
+        List<float[]> queries = quantizedSearch.sampleEmbeddings(samples);
+        List<Set<String>> expected = queries.stream()
+                .map(query -> (Set<String>) new HashSet<>(quantizedSearch.exactSearch(query, topK)))
+                .toList();
+
+        List<ModeReport> reports = new ArrayList<>();
+        for (VectorStorageMode mode : VectorStorageMode.values()) {
+            long indexBytes = quantizedSearch.indexSize(mode);
+            long[] latencies = new long[queries.size()];
+            double recallSum = 0;
+
+            for (int i = 0; i < queries.size(); i++) {
+                long start = System.nanoTime();
+                List<Document> results = quantizedSearch.search(mode, queries.get(i), topK, 0);
+                latencies[i] = (System.nanoTime() - start) / 1_000;
+
+                Set<String> truth = expected.get(i);
+                long found = results.stream().map(Document::getId).filter(truth::contains).count();
+                recallSum += truth.isEmpty() ? 1 : (double) found / truth.size();
+            }
+
+            Arrays.sort(latencies);
+            reports.add(new ModeReport(mode, indexBytes >= 0, indexBytes,
+                    queries.isEmpty() ? 0 : recallSum / queries.size(),
+                    percentile(latencies, 0.50), percentile(latencies, 0.95)));
+        }
+        return new Report(quantizedSearch.getMode(), quantizedSearch.totalIndexSize(), reports);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    /**
+     * @param activeMode the configured storage mode; with unused indexes dropped, the only one with an index
+     * @param totalIndexBytes every index on the vector table together, -1 if the table is missing
+     * @param modes one row per storage mode
+     */
+    public record Report(VectorStorageMode activeMode, long totalIndexBytes, List<ModeReport> modes) {
+    }
+
+    /**
+     * @param mode the storage mode measured
+     * @param indexed whether the mode's index exists; without it the search scans the table
+     * @param indexBytes index size on disk, -1 if missing
+     * @param recallAtK share of the exact top k that the mode returned
+     * @param p50Micros median search latency
+     * @param p95Micros 95th percentile search latency
+     */
+    public record ModeReport(VectorStorageMode mode, boolean indexed, long indexBytes, double recallAtK,
+                             long p50Micros, long p95Micros) {
+    }
+}
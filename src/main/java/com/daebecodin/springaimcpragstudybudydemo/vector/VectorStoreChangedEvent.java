@@ -0,0 +1,25 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published whenever rows in the vector table are added, removed or relabeled
+ * outside the VectorStore interface, so anything caching search results can drop them
+ */
+public class VectorStoreChangedEvent extends ApplicationEvent {
+
+    private final String sourceFilename;
+
+    /**
+     * @param source the component that changed the table
+     * @param sourceFilename the document whose chunks changed
+     */
+    public VectorStoreChangedEvent(Object source, String sourceFilename) {
+        super(source);
+        this.sourceFilename = sourceFilename;
+    }
+
+    public String getSourceFilename() {
+        return sourceFilename;
+    }
+}
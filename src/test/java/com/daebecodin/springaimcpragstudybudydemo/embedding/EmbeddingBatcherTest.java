@@ -0,0 +1,202 @@
+package com.daebecodin.springaimcpragstudybudydemo.embedding;
+
+import com.daebecodin.springaimcpragstudybudydemo.provider.BulkheadFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingBatcherTest {
+
+    private final RecordingEmbeddingModel embeddingModel = new RecordingEmbeddingModel();
+    private final EmbeddingBatchingStrategy strategy = new EmbeddingBatchingStrategy();
+    private EmbeddingBatcher batcher;
+
+    @AfterEach
+    void shutdown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    void sendsABatchAsSoonAsItHasMaxChunks() throws Exception {
+        batcher = batcher(3, 40_000, 60_000);
+
+        List<float[]> embeddings = batcher.submit(chunks("a", 3)).get(5, TimeUnit.SECONDS);
+
+        assertThat(embeddingModel.requests).containsExactly(List.of("a-0", "a-1", "a-2"));
+        assertThat(embeddings).hasSize(3);
+    }
+
+    @Test
+    void cutsABatchAtTheTokenBudget() throws Exception {
+        Document chunk = new Document("the quick brown fox jumps over the lazy dog");
+        int tokens = strategy.estimateTokens(chunk);
+        batcher = batcher(96, tokens, 60_000); // one chunk fits, two do not
+
+        CompletableFuture<List<float[]>> result = batcher.submit(List.of(chunk, new Document(chunk.getText())));
+        batcher.flush();
+        result.get(5, TimeUnit.SECONDS);
+
+        assertThat(embeddingModel.requests).hasSize(2).allSatisfy(request -> assertThat(request).hasSize(1));
+    }
+
+    @Test
+    void sendsAPartialBatchOnceItsOldestChunkHasWaitedMaxWait() throws Exception {
+        batcher = batcher(96, 40_000, 50);
+
+        CompletableFuture<List<float[]>> first = batcher.submit(chunks("a", 2));
+        CompletableFuture<List<float[]>> second = batcher.submit(chunks("b", 1));
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).hasSize(2);
+        assertThat(second.get(5, TimeUnit.SECONDS)).hasSize(1);
+        // both documents went out in the same request
+        assertThat(embeddingModel.requests).containsExactly(List.of("a-0", "a-1", "b-0"));
+    }
+
+    @Test
+    void returnsEmbeddingsInTheOrderOfTheSubmittedChunksAcrossBatches() throws Exception {
+        batcher = batcher(2, 40_000, 60_000);
+
+        List<Document> chunks = chunks("a", 5);
+        CompletableFuture<List<float[]>> result = batcher.submit(chunks);
+        batcher.flush();
+        List<float[]> embeddings = result.get(5, TimeUnit.SECONDS);
+
+        assertThat(embeddingModel.requests).hasSize(3);
+        for (int i = 0; i < chunks.size(); i++) {
+            assertThat(embeddings.get(i)).containsExactly(RecordingEmbeddingModel.vectorFor(chunks.get(i).getText()));
+        }
+    }
+
+    @Test
+    void reportsProgressOncePerReturnedBatchBeforeCompleting() throws Exception {
+        batcher = batcher(2, 40_000, 60_000);
+        List<Integer> progress = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<List<float[]>> result = batcher.submit(chunks("a", 5), progress::add);
+        batcher.flush();
+        result.get(5, TimeUnit.SECONDS);
+
+        // batches can return in any order; the count still only goes up and reaches every chunk before completion
+        assertThat(progress).hasSize(3).isSorted().last().isEqualTo(5);
+    }
+
+    @Test
+    void failsEverySubmissionInAFailedBatch() {
+        embeddingModel.fail = true;
+        batcher = batcher(96, 40_000, 60_000);
+
+        CompletableFuture<List<float[]>> first = batcher.submit(chunks("a", 1));
+        CompletableFuture<List<float[]>> second = batcher.submit(chunks("b", 1));
+        batcher.flush();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("provider unavailable");
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("provider unavailable");
+    }
+
+    @Test
+    void waitsOutAFullBulkheadInsteadOfFailingTheBatch() throws Exception {
+        embeddingModel.busyRejections.set(2);
+        batcher = batcher(96, 40_000, 60_000);
+
+        CompletableFuture<List<float[]>> result = batcher.submit(chunks("a", 2));
+        batcher.flush();
+
+        assertThat(result.get(5, TimeUnit.SECONDS)).hasSize(2);
+        assertThat(embeddingModel.requests).hasSize(3);
+    }
+
+    @Test
+    void failsTheBatchOnceTheBulkheadHasStayedFullForTheBusyTimeout() {
+        embeddingModel.busyRejections.set(Integer.MAX_VALUE);
+        batcher = batcher(96, 40_000, 60_000);
+        ReflectionTestUtils.setField(batcher, "busyTimeout", Duration.ofMillis(100));
+
+        CompletableFuture<List<float[]>> result = batcher.submit(chunks("a", 1));
+        batcher.flush();
+
+        assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasRootCauseInstanceOf(BulkheadFullException.class);
+    }
+
+    @Test
+    void completesAnEmptySubmissionWithoutARequest() throws Exception {
+        batcher = batcher(96, 40_000, 50);
+
+        assertThat(batcher.submit(List.of()).get(1, TimeUnit.SECONDS)).isEmpty();
+        assertThat(embeddingModel.requests).isEmpty();
+    }
+
+    private EmbeddingBatcher batcher(int maxChunks, int maxRequestTokens, long maxWaitMs) {
+        ReflectionTestUtils.setField(strategy, "maxChunks", maxChunks);
+        ReflectionTestUtils.setField(strategy, "maxRequestTokens", maxRequestTokens);
+        ReflectionTestUtils.setField(strategy, "maxInputTokens", 512);
+        EmbeddingBatcher batcher = new EmbeddingBatcher(embeddingModel, strategy, 4);
+        ReflectionTestUtils.setField(batcher, "maxWaitMs", maxWaitMs);
+        ReflectionTestUtils.setField(batcher, "busyTimeout", Duration.ofSeconds(5));
+        return batcher;
+    }
+
+    private static List<Document> chunks(String document, int count) {
+        return IntStream.range(0, count).mapToObj(i -> new Document(document + "-" + i)).toList();
+    }
+
+    private static class RecordingEmbeddingModel implements EmbeddingModel {
+
+        final List<List<String>> requests = new CopyOnWriteArrayList<>();
+        volatile boolean fail;
+        // calls turned away as if the embedding bulkhead were full
+        final AtomicInteger busyRejections = new AtomicInteger();
+
+        static float[] vectorFor(String text) {
+            return new float[] { text.hashCode(), text.length() };
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            requests.add(List.copyOf(request.getInstructions()));
+            if (busyRejections.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                throw new BulkheadFullException("embedding", Duration.ofMillis(20));
+            }
+            if (fail) {
+                throw new IllegalStateException("provider unavailable");
+            }
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(vectorFor(request.getInstructions().get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vectorFor(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return 2;
+        }
+    }
+}
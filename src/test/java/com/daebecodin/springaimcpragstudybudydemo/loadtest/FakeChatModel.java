@@ -0,0 +1,138 @@
+package com.daebecodin.springaimcpragstudybudydemo.loadtest;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.TransientAiException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stands in for a hosted chat model during load tests.
+ * Each call waits a time-to-first-token drawn from the latency distribution, then produces
+ * completionTokens tokens at tokensPerSecond; streamed calls emit the tokens at that rate.
+ * Prompts that ask for JSON (BeanOutputConverter's format instructions) get a valid QuizQuestions document,
+ * everything else gets a quiz in the plain text format from the system prompt.
+ * Token counts are approximated as 4 characters per token and reported as usage, like the real models
+ */
+public class FakeChatModel implements ChatModel {
+
+    private static final String JSON_QUIZ = """
+            {"quizQuestions": [
+              {"Question": "Which annotation maps an HTTP GET request onto a handler method?", "answerText": "@GetMapping", "answerLetter": "b"},
+              {"Question": "What does a stack return from pop() when it is empty in the course implementation?", "answerText": "It throws an exception", "answerLetter": "c"},
+              {"Question": "Which class resolves the view name returned by a controller?", "answerText": "ViewResolver", "answerLetter": "a"},
+              {"Question": "What is the time complexity of push on a linked stack?", "answerText": "O(1)", "answerLetter": "d"},
+              {"Question": "Which annotation binds a query parameter to a method argument?", "answerText": "@RequestParam", "answerLetter": "a"}
+            ]}""";
+
+    private static final String TEXT_QUESTION = """
+            %d.Which statement about the course material is correct?
+            a. The first option described in the context
+            b. The second option described in the context
+            c. The third option described in the context
+            d. The fourth option described in the context
+
+            """;
+
+    private final String modelName;
+    private final LatencyDistribution firstTokenLatency;
+    private final double tokensPerSecond;
+    private final int completionTokens;
+    private final double errorRate;
+
+    /**
+     * @param modelName reported in the response metadata
+     * @param firstTokenLatency wait before the first token
+     * @param tokensPerSecond generation speed after the first token
+     * @param completionTokens length of plain text answers
+     * @param errorRate fraction of calls, 0 to 1, that fail with a TransientAiException like a throttled provider
+     */
+    public FakeChatModel(String modelName, LatencyDistribution firstTokenLatency, double tokensPerSecond,
+                         int completionTokens, double errorRate) {
+        this.modelName = modelName;
+        this.firstTokenLatency = firstTokenLatency;
+        this.tokensPerSecond = tokensPerSecond;
+        this.completionTokens = completionTokens;
+        this.errorRate = errorRate;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        List<String> tokens = answerTokens(prompt);
+        firstTokenLatency.pause();
+        failSometimes();
+        LatencyDistribution.sleep(generationTime(tokens.size()));
+        return response(String.join("", tokens), prompt, tokens.size());
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            List<String> tokens = answerTokens(prompt);
+            Duration perToken = generationTime(1);
+            Flux<ChatResponse> body = Flux.fromIterable(tokens)
+                    .delayElements(perToken)
+                    .map(token -> new ChatResponse(List.of(new Generation(new AssistantMessage(token)))))
+                    .concatWithValues(response("", prompt, tokens.size())); // usage arrives with the last chunk, like OpenAI with include_usage
+            return Mono.delay(firstTokenLatency.sample())
+                    .doOnNext(ignored -> failSometimes())
+                    .thenMany(body);
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return ChatOptions.builder().model(modelName).build();
+    }
+
+    private void failSometimes() {
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            throw new TransientAiException("Simulated " + modelName + " failure");
+        }
+    }
+
+    private Duration generationTime(int tokens) {
+        return Duration.ofNanos((long) (tokens / tokensPerSecond * 1_000_000_000L));
+    }
+
+    private ChatResponse response(String text, Prompt prompt, int completion) {
+        int promptTokens = Math.max(1, prompt.getContents().length() / 4);
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))),
+                ChatResponseMetadata.builder()
+                        .model(modelName)
+                        .usage(new DefaultUsage(promptTokens, completion))
+                        .build());
+    }
+
+    /**
+     * The answer cut into roughly 4 character tokens, so the streaming rate matches the reported usage
+     */
+    private List<String> answerTokens(Prompt prompt) {
+        String answer;
+        if (prompt.getContents().contains("JSON")) {
+            answer = JSON_QUIZ;
+        } else {
+            StringBuilder quiz = new StringBuilder("Quiz\n");
+            for (int i = 1; quiz.length() < completionTokens * 4; i++) {
+                quiz.append(TEXT_QUESTION.formatted(i));
+            }
+            answer = quiz.substring(0, completionTokens * 4);
+        }
+        List<String> tokens = new ArrayList<>(answer.length() / 4 + 1);
+        for (int start = 0; start < answer.length(); start += 4) {
+            tokens.add(answer.substring(start, Math.min(answer.length(), start + 4)));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,42 @@
+package com.daebecodin.springaimcpragstudybudydemo.loadtest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+/**
+ * Local fakes for the three hosted models, registered under the bean names QuizConfig looks up.
+ * The real auto-configurations are switched off in application-loadtest.properties
+ */
+@TestConfiguration(proxyBeanMethods = false)
+@Profile("loadtest")
+public class FakeModelsConfig {
+
+    @Bean
+    FakeChatModel openAiChatModel(@Value("${loadtest.fake.openai.latency-median:700ms}") Duration median,
+                                  @Value("${loadtest.fake.openai.latency-p95:2500ms}") Duration p95,
+                                  @Value("${loadtest.fake.openai.tokens-per-second:80}") double tokensPerSecond,
+                                  @Value("${loadtest.fake.openai.completion-tokens:300}") int completionTokens,
+                                  @Value("${loadtest.fake.openai.error-rate:0}") double errorRate) {
+        return new FakeChatModel("fake-openai", new LatencyDistribution(median, p95), tokensPerSecond, completionTokens, errorRate);
+    }
+
+    @Bean
+    FakeChatModel bedrockProxyChatModel(@Value("${loadtest.fake.bedrock.latency-median:900ms}") Duration median,
+                                        @Value("${loadtest.fake.bedrock.latency-p95:4s}") Duration p95,
+                                        @Value("${loadtest.fake.bedrock.tokens-per-second:60}") double tokensPerSecond,
+                                        @Value("${loadtest.fake.bedrock.completion-tokens:300}") int completionTokens,
+                                        @Value("${loadtest.fake.bedrock.error-rate:0}") double errorRate) {
+        return new FakeChatModel("fake-bedrock", new LatencyDistribution(median, p95), tokensPerSecond, completionTokens, errorRate);
+    }
+
+    @Bean
+    FakeEmbeddingModel cohereEmbeddingModel(@Value("${spring.ai.vectorstore.pgvector.dimensions:1024}") int dimensions,
+                                            @Value("${loadtest.fake.embedding.latency-median:60ms}") Duration median,
+                                            @Value("${loadtest.fake.embedding.latency-p95:250ms}") Duration p95) {
+        return new FakeEmbeddingModel(dimensions, new LatencyDistribution(median, p95));
+    }
+}
@@ -0,0 +1,49 @@
+package com.daebecodin.springaimcpragstudybudydemo.loadtest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Log-normal latency described by its median and p95, which is roughly how hosted model latency is shaped:
+ * most calls near the median and a long right tail
+ * @param median half of the samples are faster than this
+ * @param p95 95% of the samples are faster than this; equal to median for a fixed latency
+ */
+public record LatencyDistribution(Duration median, Duration p95) {
+
+    private static final double Z_95 = 1.6448536269514722;
+
+    public LatencyDistribution {
+        if (p95.compareTo(median) < 0) {
+            throw new IllegalArgumentException("p95 " + p95 + " is below the median " + median);
+        }
+    }
+
+    /**
+     * @return one latency drawn from the distribution
+     */
+    public Duration sample() {
+        long medianNanos = median.toNanos();
+        if (medianNanos <= 0) {
+            return Duration.ZERO;
+        }
+        double sigma = Math.log((double) p95.toNanos() / medianNanos) / Z_95;
+        double nanos = medianNanos * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian());
+        return Duration.ofNanos((long) nanos);
+    }
+
+    /**
+     * Sleeps for one sample; the interrupt flag is kept so callers that are cancelled stop early
+     */
+    public void pause() {
+        sleep(sample());
+    }
+
+    static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.daebecodin.springaimcpragstudybudydemo.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load driver for a running instance, normally one started with ./gradlew bootTestRun.
+ * For every scenario and every user count, that many virtual-thread users send requests back to back
+ * for the duration; results from the warm-up are thrown away.
+ * Reports throughput and p50/p95/p99 per step on stdout and as JSON, so a run over increasing
+ * user counts shows where throughput stops growing and latency starts climbing.
+ * <p>
+ * Options, all --name=value: base-url, scenarios (quiz,search,ingest), users (comma separated list),
+ * duration, warmup, model, quiz-cache, ingest-kb, output
+ */
+public class LoadDriver {
+
+    private static final List<String> TOPICS = List.of(
+            "quiz me on spring mvc",
+            "quiz me on stack implementations",
+            "quiz me on linked bags",
+            "quiz me on request mapping annotations",
+            "quiz me on the time complexity of stack operations");
+
+    private static final List<String> WORDS = List.of(
+            "stack", "push", "pop", "array", "linked", "node", "controller", "request", "mapping", "handler",
+            "resize", "capacity", "generic", "iterator", "exception", "servlet", "dispatcher", "view", "model", "bag");
+
+    private static final ObjectMapper objectMapper = JsonMapper.builder()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .build();
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, String> options;
+    private final String baseUrl;
+
+    LoadDriver(Map<String, String> options) {
+        this.options = options;
+        this.baseUrl = option("base-url", "http://localhost:8080");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+        new LoadDriver(options).run();
+    }
+
+    private void run() throws Exception {
+        List<String> scenarios = Arrays.asList(option("scenarios", "quiz,search,ingest").split(","));
+        int[] userCounts = Arrays.stream(option("users", "1,5,10,25,50").split(",")).mapToInt(Integer::parseInt).toArray();
+        Duration duration = Duration.parse("PT" + option("duration", "30s"));
+        Duration warmup = Duration.parse("PT" + option("warmup", "5s"));
+
+        System.out.printf("%-8s %6s %9s %7s %10s %9s %9s %9s %9s%n",
+                "scenario", "users", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        List<StepResult> results = new ArrayList<>();
+        for (String scenario : scenarios) {
+            for (int users : userCounts) {
+                StepResult result = runStep(scenario.trim(), users, warmup, duration);
+                results.add(result);
+                System.out.printf("%-8s %6d %9d %7d %10.2f %9.1f %9.1f %9.1f %9.1f %s%n",
+                        result.scenario(), result.users(), result.requests(), result.errors(), result.throughputPerSecond(),
+                        result.p50Millis(), result.p95Millis(), result.p99Millis(), result.maxMillis(),
+                        result.errorsByStatus().isEmpty() ? "" : result.errorsByStatus());
+            }
+        }
+
+        Path output = Path.of(option("output", "build/reports/loadtest/results.json"));
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        objectMapper.writeValue(output.toFile(), results);
+        System.out.println("Results written to " + output.toAbsolutePath());
+    }
+
+    private StepResult runStep(String scenario, int users, Duration warmup, Duration duration) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+        try (ExecutorService usersExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < users; i++) {
+                usersExecutor.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        long sent = System.nanoTime();
+                        String error = send(scenario);
+                        long finished = System.nanoTime();
+                        if (sent < measureFrom || finished > end) {
+                            continue; // warm-up, or spilled past the measured window
+                        }
+                        if (error == null) {
+                            latencies.add(finished - sent);
+                        } else {
+                            errors.computeIfAbsent(error, key -> new AtomicLong()).incrementAndGet();
+                        }
+                    }
+                });
+            }
+        } // waits for every user to finish its last request
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        Map<String, Long> errorsByStatus = new HashMap<>();
+        errors.forEach((status, count) -> errorsByStatus.put(status, count.get()));
+        long errorCount = errorsByStatus.values().stream().mapToLong(Long::longValue).sum();
+        double seconds = duration.toNanos() / 1e9;
+        return new StepResult(scenario, users, sorted.length + errorCount, errorCount, sorted.length / seconds,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6, errorsByStatus);
+    }
+
+    /**
+     * Sends one request for the scenario
+     * @return null on success, otherwise the HTTP status or exception that failed it
+     */
+    private String send(String scenario) {
+        try {
+            return switch (scenario) {
+                case "quiz" -> expect(get("/quiz?query=" + encode(randomTopic())
+                        + "&model=" + option("model", "openai")
+                        + "&cache=" + option("quiz-cache", "false")), 200);
+                // a distinct suffix per request keeps the retrieval cache from answering everything
+                case "search" -> expect(get("/debug/search?topK=5&query=" + encode(randomTopic() + " " + sequence.incrementAndGet())), 200);
+                case "ingest" -> ingest();
+                default -> throw new IllegalArgumentException("Unknown scenario " + scenario);
+            };
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        } catch (IOException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Uploads a freshly generated text file and waits for its indexing job to finish,
+     * so the latency covers parse, split, embed and store
+     */
+    private String ingest() throws IOException, InterruptedException {
+        String boundary = "loadtest-" + UUID.randomUUID();
+        String filename = "loadtest-" + sequence.incrementAndGet() + "-" + UUID.randomUUID() + ".txt";
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(randomText(Integer.parseInt(option("ingest-kb", "64")) * 1024).getBytes(StandardCharsets.UTF_8));
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpResponse<String> submitted = httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/documents/upload"))
+                .timeout(requestTimeout())
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (submitted.statusCode() != 202) {
+            return String.valueOf(submitted.statusCode());
+        }
+
+        String jobId = objectMapper.readTree(submitted.body()).path("id").asText();
+        long deadline = System.nanoTime() + requestTimeout().toNanos();
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            HttpResponse<String> job = get("/api/documents/jobs/" + jobId);
+            if (job.statusCode() != 200) {
+                return "job " + job.statusCode();
+            }
+            JsonNode state = objectMapper.readTree(job.body()).path("state");
+            switch (state.asText()) {
+                case "COMPLETED" -> {
+                    return null;
+                }
+                case "FAILED" -> {
+                    return "job FAILED";
+                }
+                default -> {
+                    // still running
+                }
+            }
+        }
+        return "job timeout";
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(requestTimeout())
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String expect(HttpResponse<String> response, int status) {
+        return response.statusCode() == status ? null : String.valueOf(response.statusCode());
+    }
+
+    private Duration requestTimeout() {
+        return Duration.parse("PT" + option("request-timeout", "5m"));
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static String randomTopic() {
+        return TOPICS.get(ThreadLocalRandom.current().nextInt(TOPICS.size()));
+    }
+
+    private static String randomText(int length) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(WORDS.get(random.nextInt(WORDS.size())));
+            text.append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        return text.toString();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length) - 1; // nearest rank
+        return sorted[Math.max(0, rank)] / 1e6;
+    }
+
+    /**
+     * One scenario at one user count; latencies in milliseconds, successful requests only
+     */
+    public record StepResult(String scenario, int users, long requests, long errors, double throughputPerSecond,
+                             double p50Millis, double p95Millis, double p99Millis, double maxMillis,
+                             Map<String, Long> errorsByStatus) {
+    }
+}
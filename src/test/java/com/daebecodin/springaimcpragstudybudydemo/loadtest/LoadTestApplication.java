@@ -0,0 +1,17 @@
+package com.daebecodin.springaimcpragstudybudydemo.loadtest;
+
+import com.daebecodin.springaimcpragstudybudydemo.SpringAiMcpRagStudyBudyDemoApplication;
+import org.springframework.boot.SpringApplication;
+
+/**
+ * Runs the real application with the loadtest profile and the fake models; started by ./gradlew bootTestRun
+ */
+public class LoadTestApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.from(SpringAiMcpRagStudyBudyDemoApplication::main)
+                .with(FakeModelsConfig.class)
+                .withAdditionalProfiles("loadtest")
+                .run(args);
+    }
+}
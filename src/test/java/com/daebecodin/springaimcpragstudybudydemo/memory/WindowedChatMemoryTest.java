@@ -0,0 +1,161 @@
+package com.daebecodin.springaimcpragstudybudydemo.memory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WindowedChatMemoryTest {
+
+    private final InMemoryRepository repository = new InMemoryRepository();
+
+    @Test
+    void keepsTheNewestMessagesThatFitTheWindow() throws InterruptedException {
+        JTokkitTokenCountEstimator estimator = new JTokkitTokenCountEstimator();
+        List<Message> turns = List.of(new UserMessage("quiz me on spring mvc"), new AssistantMessage("what is a controller?"),
+                new UserMessage("now the answers"), new AssistantMessage("a controller handles requests"));
+        int lastTwo = estimator.estimate(turns.get(2).getText()) + estimator.estimate(turns.get(3).getText());
+        WindowedChatMemory memory = memory(lastTwo, 100);
+
+        turns.forEach(turn -> memory.add("student-42", List.of(turn)));
+        flush(memory);
+
+        assertThat(texts(memory.get("student-42"))).containsExactly("now the answers", "a controller handles requests");
+        assertThat(repository.contents("student-42")).containsExactly("now the answers", "a controller handles requests");
+    }
+
+    @Test
+    void keepsTheNewestMessageEvenWhenItIsLargerThanTheWindow() {
+        WindowedChatMemory memory = memory(1, 100);
+
+        memory.add("student-42", List.of(new UserMessage("quiz me"), new UserMessage("quiz me on spring mvc instead")));
+
+        assertThat(texts(memory.get("student-42"))).containsExactly("quiz me on spring mvc instead");
+    }
+
+    @Test
+    void clearEmptiesTheConversationAndLaterMessagesStartAFreshOne() throws InterruptedException {
+        WindowedChatMemory memory = memory(2000, 100);
+
+        memory.add("student-42", List.of(new UserMessage("quiz me"), new AssistantMessage("what is a bean?")));
+        memory.clear("student-42");
+        assertThat(memory.get("student-42")).isEmpty();
+        memory.add("student-42", List.of(new UserMessage("quiz me on jpa")));
+        flush(memory);
+
+        assertThat(texts(memory.get("student-42"))).containsExactly("quiz me on jpa");
+        assertThat(repository.contents("student-42")).containsExactly("quiz me on jpa");
+    }
+
+    @Test
+    void reloadsAConversationFromTheTable() throws InterruptedException {
+        WindowedChatMemory first = memory(2000, 100);
+        first.add("student-42", List.of(new UserMessage("quiz me"), new AssistantMessage("what is a bean?")));
+        flush(first);
+
+        WindowedChatMemory restarted = memory(2000, 100);
+        restarted.add("student-42", List.of(new UserMessage("now the answers")));
+        flush(restarted);
+
+        assertThat(texts(restarted.get("student-42"))).containsExactly("quiz me", "what is a bean?", "now the answers");
+        assertThat(repository.contents("student-42")).containsExactly("quiz me", "what is a bean?", "now the answers");
+    }
+
+    @Test
+    void aConversationEvictedWithWritesQueuedKeepsThemAndItsSequenceNumbers() throws InterruptedException {
+        WindowedChatMemory memory = memory(2000, 1); // room for one conversation; the writer is not running yet
+
+        memory.add("student-1", List.of(new UserMessage("quiz me on mvc")));
+        memory.add("student-2", List.of(new UserMessage("quiz me on jpa")));
+        cache(memory).cleanUp();
+        assertThat(cache(memory).estimatedSize()).isEqualTo(1);
+
+        // neither write has reached the table, yet both conversations are whole after the eviction
+        assertThat(texts(memory.get("student-1"))).containsExactly("quiz me on mvc");
+        assertThat(texts(memory.get("student-2"))).containsExactly("quiz me on jpa");
+        memory.add("student-1", List.of(new AssistantMessage("what is a controller?")));
+        memory.add("student-2", List.of(new AssistantMessage("what is an entity?")));
+        flush(memory);
+
+        assertThat(repository.contents("student-1")).containsExactly("quiz me on mvc", "what is a controller?");
+        assertThat(repository.contents("student-2")).containsExactly("quiz me on jpa", "what is an entity?");
+    }
+
+    /**
+     * @return a memory whose writer has not been started; {@link #flush} starts and stops it
+     */
+    private WindowedChatMemory memory(int maxTokens, long maxConversations) {
+        return new WindowedChatMemory(repository, new SimpleMeterRegistry(), maxTokens, maxConversations,
+                Duration.ofHours(1), Duration.ofMillis(10), 500, 1000);
+    }
+
+    // stopping the writer writes everything still queued before it returns
+    private static void flush(WindowedChatMemory memory) throws InterruptedException {
+        memory.startWriter();
+        memory.stopWriter();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cache<String, ?> cache(WindowedChatMemory memory) {
+        return (Cache<String, ?>) ReflectionTestUtils.getField(memory, "conversations");
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    /**
+     * chat_memory in a map; like the table, an insert for a sequence number already there is ignored
+     */
+    private static final class InMemoryRepository extends ConversationRepository {
+
+        private final Map<String, NavigableMap<Long, StoredMessage>> rows = new ConcurrentHashMap<>();
+
+        InMemoryRepository() {
+            super(null);
+        }
+
+        @Override
+        public List<StoredMessage> findAll(String conversationId) {
+            return List.copyOf(rows.getOrDefault(conversationId, new TreeMap<>()).values());
+        }
+
+        @Override
+        public void saveAll(List<StoredMessage> messages) {
+            messages.forEach(message -> rows.computeIfAbsent(message.conversationId(), id -> new TreeMap<>())
+                    .putIfAbsent(message.seq(), message));
+        }
+
+        @Override
+        public void trim(Map<String, Long> firstKeptSeq) {
+            firstKeptSeq.forEach((conversationId, seq) -> {
+                NavigableMap<Long, StoredMessage> conversation = rows.get(conversationId);
+                if (conversation != null) {
+                    conversation.headMap(seq, false).clear();
+                }
+            });
+        }
+
+        @Override
+        public void delete(String conversationId) {
+            rows.remove(conversationId);
+        }
+
+        List<String> contents(String conversationId) {
+            return findAll(conversationId).stream().map(StoredMessage::content).toList();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.daebecodin.springaimcpragstudybudydemo.provider;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ModelRouterTest {
+
+    private final ProviderStatsRegistry statsRegistry = new ProviderStatsRegistry(new SimpleMeterRegistry());
+    private ModelRouter router;
+
+    @AfterEach
+    void shutdown() {
+        if (router != null) {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    void failsOverToTheNextProviderAndRecordsTheFailure() {
+        router(answering("openai", new IllegalStateException("provider unavailable")), answering("bedrock", null));
+
+        assertThat(router.call(ModelRouterTest::ask)).isEqualTo("bedrock");
+        assertThat(statsRegistry.get("openai").snapshot().errorRate()).isEqualTo(1.0);
+        assertThat(statsRegistry.get("bedrock").snapshot().samples()).isEqualTo(1);
+    }
+
+    @Test
+    void throwsTheLastFailureWhenEveryProviderFails() {
+        router(answering("openai", new IllegalStateException("openai down")),
+                answering("bedrock", new IllegalStateException("bedrock down")));
+
+        assertThatThrownBy(() -> router.call(ModelRouterTest::ask)).hasMessageContaining("bedrock down");
+    }
+
+    @Test
+    void ranksTheFasterMeasuredProviderFirst() {
+        router(answering("openai", null), answering("bedrock", null));
+        record("openai", 3, Duration.ofMillis(500));
+        record("bedrock", 3, Duration.ofMillis(100));
+
+        assertThat(router.rank()).containsExactly("bedrock", "openai");
+        assertThat(router.call(ModelRouterTest::ask)).isEqualTo("bedrock");
+    }
+
+    @Test
+    void sendsAnUnhealthyProviderOneProbeAndRankingDoesNotClaimIt() throws InterruptedException {
+        router(Duration.ofMillis(100), answering("openai", null), answering("bedrock", null));
+        record("bedrock", 3, Duration.ofMillis(100));
+        for (int i = 0; i < 3; i++) {
+            statsRegistry.get("openai").recordFailure(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        assertThat(router.pickForCall()).isEqualTo("bedrock"); // probe not due yet
+        Thread.sleep(150);
+
+        // asking for the ranking as often as we like leaves the probe for a real call
+        assertThat(router.rank()).startsWith("openai");
+        assertThat(router.rank()).startsWith("openai");
+        assertThat(router.pickForCall()).isEqualTo("openai");
+        assertThat(router.pickForCall()).isEqualTo("bedrock");
+    }
+
+    @Test
+    void hedgesASlowCallAndDoesNotCountTheLoserAsAFailure() throws InterruptedException {
+        CountDownLatch loserFinished = new CountDownLatch(1);
+        // like an HTTP client: the interrupt surfaces as an I/O error and the flag is cleared
+        ChatModel hanging = prompt -> {
+            try {
+                Thread.sleep(10_000);
+                return response("openai");
+            } catch (InterruptedException e) {
+                throw new ResourceAccessException("I/O error", new InterruptedIOException());
+            }
+        };
+        router(hanging, answering("bedrock", null));
+        ReflectionTestUtils.setField(router, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(router, "hedgeMinDelay", Duration.ofMillis(50));
+        record("openai", 3, Duration.ofMillis(1));
+        record("bedrock", 3, Duration.ofMillis(200));
+
+        String answer = router.call(client -> {
+            try {
+                return ask(client);
+            } finally {
+                if (client == router.client("openai")) {
+                    loserFinished.countDown();
+                }
+            }
+        });
+
+        assertThat(answer).isEqualTo("bedrock");
+        assertThat(loserFinished.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(statsRegistry.get("openai").snapshot().samples()).isEqualTo(3);
+        assertThat(statsRegistry.get("openai").snapshot().errorRate()).isZero();
+    }
+
+    private void router(ChatModel openai, ChatModel bedrock) {
+        router(Duration.ofHours(1), openai, bedrock);
+    }
+
+    private void router(Duration probeInterval, ChatModel openai, ChatModel bedrock) {
+        ReflectionTestUtils.setField(statsRegistry, "window", 20);
+        ReflectionTestUtils.setField(statsRegistry, "minSamples", 3);
+        ReflectionTestUtils.setField(statsRegistry, "maxErrorRate", 0.5);
+        ReflectionTestUtils.setField(statsRegistry, "probeInterval", probeInterval);
+        router = new ModelRouter(client("openai", openai), client("bedrock", bedrock), statsRegistry);
+    }
+
+    private ChatClient client(String provider, ChatModel model) {
+        return ChatClient.builder(model).defaultAdvisors(new ProviderStatsAdvisor(statsRegistry.get(provider))).build();
+    }
+
+    private void record(String provider, int calls, Duration latency) {
+        for (int i = 0; i < calls; i++) {
+            statsRegistry.get(provider).recordSuccess(latency.toNanos());
+        }
+    }
+
+    /**
+     * @param failure thrown instead of answering, or null to answer with the provider's name
+     */
+    private static ChatModel answering(String provider, RuntimeException failure) {
+        return prompt -> {
+            if (failure != null) {
+                throw failure;
+            }
+            return response(provider);
+        };
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static String ask(ChatClient client) {
+        return client.prompt("quiz me").call().content();
+    }
+}
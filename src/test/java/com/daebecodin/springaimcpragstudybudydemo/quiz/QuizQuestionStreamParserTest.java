@@ -0,0 +1,103 @@
+package com.daebecodin.springaimcpragstudybudydemo.quiz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuizQuestionStreamParserTest {
+
+    private static final String RESPONSE = """
+            {"quizQuestions": [
+              {"Question": "Which annotation maps a GET request?", "answerText": "@GetMapping", "answerLetter": "b"},
+              {"Question": "What does pop() return on an empty stack?", "answerText": "It throws", "answerLetter": "c"}
+            ]}""";
+
+    private final QuizQuestionStreamParser parser = new QuizQuestionStreamParser();
+
+    @Test
+    void readsQuestionsFedOneCharacterAtATime() {
+        List<QuizQuestion> questions = feed(RESPONSE, 1);
+
+        assertThat(questions).containsExactly(
+                new QuizQuestion("Which annotation maps a GET request?", "@GetMapping", "b"),
+                new QuizQuestion("What does pop() return on an empty stack?", "It throws", "c"));
+        assertThat(parser.getEmitted()).isEqualTo(2);
+    }
+
+    @Test
+    void returnsEachQuestionWithTheTokenThatClosesIt() {
+        int firstClose = RESPONSE.indexOf('}');
+
+        assertThat(parser.accept(RESPONSE.substring(0, firstClose))).isEmpty();
+        assertThat(parser.accept(RESPONSE.substring(firstClose, firstClose + 1)))
+                .extracting(QuizQuestion::answerLetter).containsExactly("b");
+        assertThat(parser.accept(RESPONSE.substring(firstClose + 1)))
+                .extracting(QuizQuestion::answerLetter).containsExactly("c");
+    }
+
+    @Test
+    void ignoresBracesAndEscapedQuotesInsideStrings() {
+        String response = """
+                [{"Question": "What does \\"{}\\" print in a {@code} block]?", "answerText": "an empty object", "answerLetter": "a"}]""";
+
+        List<QuizQuestion> questions = feed(response, 3);
+
+        assertThat(questions).extracting(QuizQuestion::Question)
+                .containsExactly("What does \"{}\" print in a {@code} block]?");
+    }
+
+    @Test
+    void skipsProseAndCodeFencesBeforeTheJson() {
+        List<QuizQuestion> questions = feed("Sure! Here is your quiz:\n```json\n" + RESPONSE + "\n```\nGood luck!", 7);
+
+        assertThat(questions).hasSize(2);
+    }
+
+    @Test
+    void acceptsPropertyNamesInAnyCase() {
+        List<QuizQuestion> questions = feed("""
+                [{"question": "Lower case?", "answertext": "yes", "ANSWERLETTER": "a"}]""", 5);
+
+        assertThat(questions).containsExactly(new QuizQuestion("Lower case?", "yes", "a"));
+    }
+
+    @Test
+    void dropsMalformedAndEmptyElementsWithoutStoppingTheStream() {
+        String response = """
+                {"quizQuestions": [
+                  {"Question": "Broken", "answerText": },
+                  {"answerText": "no question", "answerLetter": "a"},
+                  {"Question": "Still read?", "answerText": "yes", "answerLetter": "d"}
+                ]}""";
+
+        List<QuizQuestion> questions = feed(response, 4);
+
+        assertThat(questions).extracting(QuizQuestion::Question).containsExactly("Still read?");
+        assertThat(parser.getSkipped()).isEqualTo(2);
+        assertThat(parser.getEmitted()).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotTreatNestedObjectsAsQuestions() {
+        String response = """
+                {"meta": {"source": "notes"}, "quizQuestions": [
+                  {"Question": "Nested?", "answerText": "no", "answerLetter": "b", "extra": {"hint": "x"}}
+                ]}""";
+
+        List<QuizQuestion> questions = feed(response, 2);
+
+        assertThat(questions).extracting(QuizQuestion::Question).containsExactly("Nested?");
+        assertThat(parser.getSkipped()).isZero();
+    }
+
+    private List<QuizQuestion> feed(String response, int tokenLength) {
+        List<QuizQuestion> questions = new ArrayList<>();
+        for (int i = 0; i < response.length(); i += tokenLength) {
+            questions.addAll(parser.accept(response.substring(i, Math.min(response.length(), i + tokenLength))));
+        }
+        return questions;
+    }
+}
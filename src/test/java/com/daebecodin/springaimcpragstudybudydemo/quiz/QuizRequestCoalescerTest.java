@@ -0,0 +1,222 @@
+package com.daebecodin.springaimcpragstudybudydemo.quiz;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
+
+class QuizRequestCoalescerTest {
+
+    private static final List<String> CONTEXT = List.of("chunk-1", "chunk-2");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final QuizRequestCoalescer coalescer = new QuizRequestCoalescer(meterRegistry);
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void followersWaitForTheLeadersQuizInsteadOfGenerating() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger generations = new AtomicInteger();
+
+        CompletableFuture<String> leader = callAsync("Quiz me on Spring MVC", CONTEXT, () -> {
+            generations.incrementAndGet();
+            await(release);
+            return "the quiz";
+        });
+        awaitCount("call", "leader", 1);
+        // same prompt after normalizing case and whitespace
+        CompletableFuture<String> follower = callAsync("  quiz me on   spring mvc ", CONTEXT, () -> fail("a follower generated"));
+        awaitCount("call", "follower", 1);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("the quiz");
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("the quiz");
+        assertThat(generations).hasValue(1);
+        assertThat(meterRegistry.get("quiz.coalesce.followers").tag("mode", "call").summary().max()).isEqualTo(1);
+    }
+
+    @Test
+    void followersFailWithTheLeader() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = callAsync("quiz me", CONTEXT, () -> {
+            await(release);
+            throw new IllegalStateException("provider unavailable");
+        });
+        awaitCount("call", "leader", 1);
+        CompletableFuture<String> follower = callAsync("quiz me", CONTEXT, () -> fail("a follower generated"));
+        awaitCount("call", "follower", 1);
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasRootCauseInstanceOf(IllegalStateException.class).hasRootCauseMessage("provider unavailable");
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasRootCauseInstanceOf(IllegalStateException.class).hasRootCauseMessage("provider unavailable");
+    }
+
+    @Test
+    void anInterruptedFollowerIsCancelledWithoutCancellingTheLeader() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Throwable> followerFailure = new AtomicReference<>();
+        AtomicReference<Boolean> stillInterrupted = new AtomicReference<>();
+
+        CompletableFuture<String> leader = callAsync("quiz me", CONTEXT, () -> {
+            await(release);
+            return "the quiz";
+        });
+        awaitCount("call", "leader", 1);
+        Thread follower = Thread.ofVirtual().start(() -> {
+            try {
+                coalescer.call("quiz me", "openai", CONTEXT, () -> fail("a follower generated"));
+            } catch (RuntimeException e) {
+                followerFailure.set(e);
+                stillInterrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        awaitCount("call", "follower", 1);
+        follower.interrupt();
+
+        assertThat(follower.join(Duration.ofSeconds(5))).isTrue();
+        assertThat(followerFailure.get()).isInstanceOf(CancellationException.class);
+        assertThat(stillInterrupted.get()).isTrue();
+        release.countDown();
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("the quiz");
+    }
+
+    @Test
+    void doesNotShareAcrossDifferentContextOrModel() {
+        AtomicInteger generations = new AtomicInteger();
+        CountDownLatch allStarted = new CountDownLatch(3);
+        Supplier<String> generate = () -> {
+            generations.incrementAndGet();
+            allStarted.countDown();
+            await(allStarted); // all three are in flight at once
+            return "quiz";
+        };
+
+        CompletableFuture<String> first = callAsync("quiz me", CONTEXT, generate);
+        CompletableFuture<String> otherContext = callAsync("quiz me", List.of("chunk-3"), generate);
+        CompletableFuture<String> otherModel = CompletableFuture.supplyAsync(
+                () -> coalescer.call("quiz me", "bedrock", CONTEXT, generate), executor);
+
+        CompletableFuture.allOf(first, otherContext, otherModel).orTimeout(5, TimeUnit.SECONDS).join();
+        assertThat(generations).hasValue(3);
+    }
+
+    @Test
+    void generatesAgainOnceTheFlightHasLanded() {
+        AtomicInteger generations = new AtomicInteger();
+
+        coalescer.call("quiz me", "openai", CONTEXT, () -> "quiz " + generations.incrementAndGet());
+        String second = coalescer.call("quiz me", "openai", CONTEXT, () -> "quiz " + generations.incrementAndGet());
+
+        assertThat(second).isEqualTo("quiz 2");
+    }
+
+    @Test
+    void lateStreamSubscribersGetEveryTokenFromTheStart() {
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicInteger generations = new AtomicInteger();
+        List<String> leaderTokens = new CopyOnWriteArrayList<>();
+        List<String> followerTokens = new CopyOnWriteArrayList<>();
+
+        coalescer.stream("quiz me", "openai", CONTEXT, () -> {
+            generations.incrementAndGet();
+            return tokens.asFlux();
+        }).subscribe(leaderTokens::add);
+        tokens.tryEmitNext("What ");
+        coalescer.stream("quiz me", "openai", CONTEXT, () -> fail("a follower generated")).subscribe(followerTokens::add);
+        tokens.tryEmitNext("is MVC?");
+        tokens.tryEmitComplete();
+
+        assertThat(leaderTokens).containsExactly("What ", "is MVC?");
+        assertThat(followerTokens).containsExactly("What ", "is MVC?");
+        assertThat(generations).hasValue(1);
+    }
+
+    @Test
+    void streamFailureReachesEverySubscriberAndEndsTheFlight() {
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicReference<Throwable> leaderError = new AtomicReference<>();
+        AtomicReference<Throwable> followerError = new AtomicReference<>();
+
+        coalescer.stream("quiz me", "openai", CONTEXT, tokens::asFlux).subscribe(token -> { }, leaderError::set);
+        coalescer.stream("quiz me", "openai", CONTEXT, () -> fail("a follower generated"))
+                .subscribe(token -> { }, followerError::set);
+        tokens.tryEmitError(new IllegalStateException("stream broke"));
+
+        assertThat(leaderError.get()).hasMessage("stream broke");
+        assertThat(followerError.get()).hasMessage("stream broke");
+        List<String> retried = coalescer.stream("quiz me", "openai", CONTEXT, () -> Flux.just("fresh")).collectList().block();
+        assertThat(retried).containsExactly("fresh");
+    }
+
+    @Test
+    void streamsOverDifferentContextAreNotShared() {
+        AtomicInteger generations = new AtomicInteger();
+        Sinks.Many<String> first = Sinks.many().unicast().onBackpressureBuffer();
+        Sinks.Many<String> second = Sinks.many().unicast().onBackpressureBuffer();
+
+        coalescer.stream("quiz me", "openai", CONTEXT, () -> {
+            generations.incrementAndGet();
+            return first.asFlux();
+        }).subscribe();
+        coalescer.stream("quiz me", "openai", List.of("chunk-3"), () -> {
+            generations.incrementAndGet();
+            return second.asFlux();
+        }).subscribe();
+
+        assertThat(generations).hasValue(2);
+    }
+
+    private CompletableFuture<String> callAsync(String query, List<String> contextIds, Supplier<String> generate) {
+        return CompletableFuture.supplyAsync(() -> coalescer.call(query, "openai", contextIds, generate), executor);
+    }
+
+    // counters move before the leader generates and before a follower starts waiting
+    private void awaitCount(String mode, String role, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.find("quiz.coalesce.requests").tag("mode", mode).tag("role", role).counters().stream()
+                .mapToDouble(counter -> counter.count()).sum() < expected) {
+            if (System.nanoTime() > deadline) {
+                fail("no " + role + " after 5s");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("timed out waiting for the test");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
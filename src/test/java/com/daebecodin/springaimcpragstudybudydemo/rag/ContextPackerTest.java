@@ -0,0 +1,121 @@
+package com.daebecodin.springaimcpragstudybudydemo.rag;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ContextPackerTest {
+
+    private static final String SHARED = "The DispatcherServlet hands each request to the handler mapping that matches it. ";
+
+    private final ContextPacker packer = new ContextPacker(40, 0.8);
+
+    @Test
+    void mergesChunksOfOneFileWhoseEndAndStartOverlap() {
+        Document first = chunk("a", "mvc.pdf", "Spring MVC is built around a front controller. " + SHARED);
+        Document second = chunk("b", "mvc.pdf", SHARED + "Controllers then return a view name or a response body.");
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(first, second), 2_000);
+
+        assertThat(packed.documents()).singleElement().satisfies(document -> {
+            assertThat(document.getText()).isEqualTo(("Spring MVC is built around a front controller. " + SHARED
+                    + "Controllers then return a view name or a response body.").strip());
+            assertThat(document.getId()).isEqualTo("a");
+            assertThat(document.getMetadata()).containsEntry("packed_chunk_ids", List.of("a", "b"));
+        });
+        assertThat(packed.overlapTokensSaved()).isPositive();
+    }
+
+    @Test
+    void keepsTheBetterRankWhenTheLowerRankedChunkComesFirstInTheFile() {
+        Document later = chunk("later", "mvc.pdf", SHARED + "Controllers then return a view name or a response body.");
+        Document unrelated = chunk("other", "jpa.pdf", "An entity manager tracks every entity loaded in its persistence context.");
+        Document earlier = chunk("earlier", "mvc.pdf", "Spring MVC is built around a front controller. " + SHARED);
+
+        List<Document> packed = packer.pack(List.of(later, unrelated, earlier), 2_000).documents();
+
+        assertThat(packed).hasSize(2);
+        assertThat(packed.getFirst().getMetadata()).containsEntry("packed_chunk_ids", List.of("earlier", "later"));
+        assertThat(packed.get(1).getId()).isEqualTo("other");
+    }
+
+    @Test
+    void doesNotMergeAcrossFilesOrOnShortCoincidences() {
+        Document first = chunk("a", "mvc.pdf", "Spring MVC is built around a front controller. " + SHARED);
+        Document otherFile = chunk("b", "notes.pdf", SHARED + "Controllers then return a view name or a response body.");
+        Document shortOverlap = chunk("c", "mvc.pdf", "matches it. A view resolver turns a view name into a template.");
+
+        List<Document> packed = packer.pack(List.of(first, otherFile, shortOverlap), 2_000).documents();
+
+        assertThat(packed).extracting(Document::getId).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void dropsALowerRankedNearDuplicate() {
+        String paragraph = "Bean scopes decide how many instances the container creates: singleton keeps one per context, "
+                + "prototype creates a new one for every injection, and request keeps one per HTTP request.";
+        Document best = chunk("a", "beans.pdf", paragraph);
+        Document repeated = chunk("b", "beans-copy.pdf", "Chapter 4. " + paragraph);
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(best, repeated), 2_000);
+
+        assertThat(packed.documents()).extracting(Document::getId).containsExactly("a");
+        assertThat(packed.duplicateTokensSaved()).isPositive();
+    }
+
+    @Test
+    void replacesAKeptPassageWithALongerOneThatContainsIt() {
+        String paragraph = "Bean scopes decide how many instances the container creates: singleton keeps one per context, "
+                + "prototype creates a new one for every injection, and request keeps one per HTTP request.";
+        String longer = paragraph + " Session and application scopes work the same way for an HTTP session and the servlet context.";
+        Document unrelated = chunk("x", "jpa.pdf", "An entity manager tracks every entity loaded in its persistence context.");
+
+        List<Document> packed = packer.pack(List.of(chunk("short", "a.pdf", paragraph), unrelated,
+                chunk("long", "b.pdf", longer)), 2_000).documents();
+
+        // the longer text takes the short one's place at the top
+        assertThat(packed).extracting(Document::getId).containsExactly("long", "x");
+    }
+
+    @Test
+    void skipsPassagesThatDoNotFitTheBudgetButKeepsSmallerOnesBelowThem() {
+        Document small = chunk("small", "a.pdf", "A short passage about dependency injection.");
+        Document large = chunk("large", "b.pdf", "Aspect oriented programming ".repeat(200));
+        Document alsoSmall = chunk("also-small", "c.pdf", "Another short one about component scanning.");
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(small, large, alsoSmall), 50);
+
+        assertThat(packed.documents()).extracting(Document::getId).containsExactly("small", "also-small");
+        assertThat(packed.packedTokens()).isLessThanOrEqualTo(50);
+        assertThat(packed.budgetTokensSaved()).isPositive();
+    }
+
+    @Test
+    void findsTheLongestEndThatStartsTheOtherText() {
+        assertThat(ContextPacker.overlap("abcabcab", "abcabx")).isEqualTo(5);
+        assertThat(ContextPacker.overlap("aaaa", "aaaaaa")).isEqualTo(4);
+        assertThat(ContextPacker.overlap("abc", "abc")).isEqualTo(3);
+        assertThat(ContextPacker.overlap("abc", "xyz")).isZero();
+        assertThat(ContextPacker.overlap("", "abc")).isZero();
+    }
+
+    @Test
+    void overlapStaysLinearOnLongRepetitiveText() {
+        String first = "a".repeat(200_000) + "b";
+        String second = "a".repeat(200_000) + "c";
+
+        int overlap = assertTimeoutPreemptively(Duration.ofSeconds(2), () -> ContextPacker.overlap(first, second));
+
+        assertThat(overlap).isZero();
+    }
+
+    private static Document chunk(String id, String source, String text) {
+        return Document.builder().id(id).text(text).metadata(Map.of("source_filename", source)).build();
+    }
+}
@@ -0,0 +1,153 @@
+package com.daebecodin.springaimcpragstudybudydemo.vector;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+    private static final int VECTORS = 2_000;
+    private static final int K = 10;
+
+    private final SplittableRandom random = new SplittableRandom(7);
+    private final float[][] vectors = IntStream.range(0, VECTORS).mapToObj(i -> randomVector()).toArray(float[][]::new);
+
+    @Test
+    void findsMostOfTheExactNearestNeighbours() {
+        HnswIndex index = indexOf(vectors);
+
+        assertThat(recall(index, Set.of())).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    void findsAStoredVectorFirstWithSimilarityOne() {
+        HnswIndex index = indexOf(vectors);
+
+        List<HnswIndex.Hit> hits = index.search(vectors[123], K, 64);
+
+        assertThat(hits.getFirst().document().getId()).isEqualTo("doc-123");
+        assertThat(hits.getFirst().similarity()).isCloseTo(1f, within(1e-5f));
+        assertThat(hits).extracting(HnswIndex.Hit::similarity).isSortedAccordingTo(Comparator.reverseOrder());
+    }
+
+    @Test
+    void leavesTombstonedDocumentsOutOfResults() {
+        HnswIndex index = indexOf(vectors);
+        Set<Integer> removed = new HashSet<>();
+        for (int i = 0; i < VECTORS; i += 3) {
+            assertThat(index.remove("doc-" + i)).isTrue();
+            removed.add(i);
+        }
+
+        assertThat(index.remove("doc-0")).isFalse();
+        assertThat(index.liveCount()).isEqualTo(VECTORS - removed.size());
+        assertThat(index.tombstoneCount()).isEqualTo(removed.size());
+        assertThat(index.search(vectors[0], K, 64)).extracting(hit -> hit.document().getId()).doesNotContain("doc-0");
+        // tombstones still route the search, so the live neighbours are found as well as before
+        assertThat(recall(index, removed)).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    void replacesADocumentAddedAgainWithTheSameId() {
+        HnswIndex index = indexOf(vectors);
+
+        index.add(new Document("doc-5", "moved", Map.of()), vectors[6]);
+
+        assertThat(index.liveCount()).isEqualTo(VECTORS);
+        assertThat(index.tombstoneCount()).isEqualTo(1);
+        assertThat(index.search(vectors[6], 2, 64)).extracting(hit -> hit.document().getId())
+                .containsExactlyInAnyOrder("doc-5", "doc-6");
+    }
+
+    @Test
+    void compactionDropsTombstonesAndKeepsEveryLiveDocument() {
+        HnswIndex index = indexOf(vectors);
+        Set<Integer> removed = new HashSet<>();
+        for (int i = 0; i < VECTORS; i += 2) {
+            index.remove("doc-" + i);
+            removed.add(i);
+        }
+
+        HnswIndex compacted = index.compacted();
+
+        assertThat(compacted.tombstoneCount()).isZero();
+        assertThat(compacted.liveCount()).isEqualTo(index.liveCount());
+        assertThat(compacted.idsWhere(document -> true)).containsExactlyInAnyOrderElementsOf(index.idsWhere(document -> true));
+        assertThat(recall(compacted, removed)).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    void rejectsAVectorWithTheWrongDimensions() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 100, 16);
+
+        assertThatThrownBy(() -> index.add(new Document("doc", "text", Map.of()), new float[DIMENSIONS + 1]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void returnsNothingFromAnEmptyIndex() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 100, 16);
+
+        assertThat(index.search(randomVector(), K, 64)).isEmpty();
+    }
+
+    /**
+     * Fraction of the exact top K, among vectors not removed, that the index returns for 50 random queries
+     */
+    private double recall(HnswIndex index, Set<Integer> removed) {
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector();
+            Set<String> exact = new HashSet<>(IntStream.range(0, VECTORS)
+                    .filter(i -> !removed.contains(i))
+                    .boxed()
+                    .sorted(Comparator.comparingDouble((Integer i) -> cosine(query, vectors[i])).reversed())
+                    .limit(K)
+                    .map(i -> "doc-" + i)
+                    .toList());
+            found += (int) index.search(query, K, 64).stream().filter(hit -> exact.contains(hit.document().getId())).count();
+        }
+        return (double) found / (queries * K);
+    }
+
+    private static HnswIndex indexOf(float[][] vectors) {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 100, 16); // starts small so the arena has to grow
+        for (int i = 0; i < vectors.length; i++) {
+            index.add(new Document("doc-" + i, "text " + i, Map.of()), vectors[i]);
+        }
+        return index;
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}